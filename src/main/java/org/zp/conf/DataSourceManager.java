@@ -0,0 +1,145 @@
+package org.zp.conf;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zp.entity.DataBaseInfo;
+import org.zp.entity.ReadMode;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MySQL和高斯的共享连接池，按连接串和用户创建，所有服务都从这里借用连接
+ *
+ * @Author zp
+ * @Date 2024/10/23 10:12
+ */
+
+@Component
+public class DataSourceManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceManager.class);
+
+    private final Map<String, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+
+    private final DatabaseConfig databaseConfig;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * 每个连接池的最大连接数，由所有任务和增量同步共享，各任务的并行设置按connectionsPerTask调小
+     */
+    @Value("${pool.maximum-size:20}")
+    private Integer maximumPoolSize;
+
+    @Value("${task.workers:2}")
+    private Integer taskWorkers;
+
+    /**
+     * 增量同步常驻占用一个高斯连接，并在加载表结构时临时借用一个MySQL连接
+     */
+    @Value("${cdc.enabled:false}")
+    private Boolean cdcEnabled;
+
+    /**
+     * CURSOR模式下在MySQL连接池的连接属性中开启useCursorFetch，不另建连接池
+     */
+    @Value("${sync.read.mode:DEFAULT}")
+    private ReadMode readMode;
+
+    @Value("${pool.minimum-idle:1}")
+    private Integer minimumIdle;
+
+    @Value("${pool.connection-timeout-ms:30000}")
+    private Long connectionTimeout;
+
+    @Value("${pool.validation-timeout-ms:5000}")
+    private Long validationTimeout;
+
+    @Value("${pool.idle-timeout-ms:600000}")
+    private Long idleTimeout;
+
+    @Value("${pool.max-lifetime-ms:1800000}")
+    private Long maxLifetime;
+
+    /**
+     * 连接借出超过该时长未归还时打印泄漏告警，0表示关闭。大表复制会合法地长时间持有连接，默认1小时
+     */
+    @Value("${pool.leak-detection-threshold-ms:3600000}")
+    private Long leakDetectionThreshold;
+
+    public DataSourceManager(DatabaseConfig databaseConfig, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.databaseConfig = databaseConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    /**
+     * 每个任务可以同时持有的连接数：扣除增量同步占用的连接后，由task.workers个任务平分
+     */
+    public int connectionsPerTask() {
+        int shared = maximumPoolSize - (cdcEnabled ? 1 : 0);
+        return Math.max(1, shared / Math.max(1, taskWorkers));
+    }
+
+    public DataSource getMysqlDataSource() {
+        return getDataSource(databaseConfig.getMysqlDataBaseInfo());
+    }
+
+    public DataSource getGaussDataSource() {
+        return getDataSource(databaseConfig.getGaussDataBaseInfo());
+    }
+
+    public DataSource getDataSource(DataBaseInfo dataBaseInfo) {
+        String key = dataBaseInfo.getUrl() + "|" + dataBaseInfo.getUser();
+        return dataSources.computeIfAbsent(key, k -> createDataSource(dataBaseInfo));
+    }
+
+    public Connection getConnection(DataBaseInfo dataBaseInfo) throws SQLException {
+        return getDataSource(dataBaseInfo).getConnection();
+    }
+
+    private HikariDataSource createDataSource(DataBaseInfo dataBaseInfo) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("pool-" + dataBaseInfo.getSchema() + "-" + dataSources.size());
+        config.setJdbcUrl(dataBaseInfo.getUrl());
+        config.setUsername(dataBaseInfo.getUser());
+        config.setPassword(dataBaseInfo.getPassword());
+        if (readMode == ReadMode.CURSOR && dataBaseInfo.getUrl().startsWith("jdbc:mysql:")) {
+            config.addDataSourceProperty("useCursorFetch", "true");
+        }
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setConnectionTimeout(connectionTimeout);
+        config.setValidationTimeout(validationTimeout);
+        config.setIdleTimeout(idleTimeout);
+        config.setMaxLifetime(maxLifetime);
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+        // 数据库不可用时不阻止启动，借用连接时再报错
+        config.setInitializationFailTimeout(-1);
+        // 连接池的活动、空闲、等待连接数等指标按池名发布
+        meterRegistry.ifAvailable(registry -> config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        logger.info("创建连接池 {}，最大连接数: {}", dataBaseInfo.getUrl(), maximumPoolSize);
+        return new HikariDataSource(config);
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSources.values().forEach(HikariDataSource::close);
+        dataSources.clear();
+    }
+}
@@ -0,0 +1,138 @@
+package org.zp.conf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 迁移过程的Micrometer指标，通过/actuator/metrics和/actuator/prometheus暴露。
+ * 每秒行数、字节数由Prometheus对计数器求rate得到，连接池的活动连接数由Hikari的hikaricp_connections_*指标提供。
+ * 按表的指标同时带task和table标签，多个任务同时运行时互不合并；批次耗时的直方图不按表区分，避免每张表各产生一组桶
+ *
+ * @Author zp
+ * @Date 2024/10/25 14:30
+ */
+
+@Component
+public class MigrationMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Counter> rowCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> byteCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> fetchTimers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> queueGauges = new ConcurrentHashMap<>();
+    private final Map<String, Timer> compareTimers = new ConcurrentHashMap<>();
+
+    private final Timer batchLatency;
+    private final Timer statementSuccess;
+    private final Timer statementFailure;
+    private final Counter failedStatements;
+
+    public MigrationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.batchLatency = Timer.builder("sync.batch.latency")
+                .description("批次写入高斯的耗时")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.statementSuccess = Timer.builder("sql.statement.latency")
+                .description("SQL文件中单条语句的执行耗时")
+                .tags("result", "success")
+                .register(registry);
+        this.statementFailure = Timer.builder("sql.statement.latency")
+                .description("SQL文件中单条语句的执行耗时")
+                .tags("result", "failure")
+                .register(registry);
+        this.failedStatements = Counter.builder("sql.statements.failed")
+                .description("SQL文件中执行失败的语句数")
+                .register(registry);
+    }
+
+    /**
+     * 已写入高斯的行数
+     */
+    public void recordRows(String taskId, String table, long rows) {
+        rowCounters.computeIfAbsent(key(taskId, table), k -> Counter.builder("sync.rows")
+                .description("已同步的行数")
+                .tags("task", taskId, "table", table)
+                .register(registry)).increment(rows);
+    }
+
+    /**
+     * 一次executeBatch/COPY发送的耗时和估算字节数
+     */
+    public void recordBatch(String taskId, String table, long bytes, long elapsedNanos) {
+        batchLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        byteCounters.computeIfAbsent(key(taskId, table), k -> Counter.builder("sync.bytes")
+                .description("已同步数据的估算字节数")
+                .baseUnit("bytes")
+                .tags("task", taskId, "table", table)
+                .register(registry)).increment(bytes);
+    }
+
+    /**
+     * 一个批次中等待MySQL返回数据的耗时
+     */
+    public void recordFetch(String taskId, String table, long elapsedNanos) {
+        fetchTimers.computeIfAbsent(key(taskId, table), k -> Timer.builder("sync.fetch.time")
+                .description("从MySQL读取一个批次的耗时")
+                .tags("task", taskId, "table", table)
+                .register(registry)).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 流水线队列中等待写入的批次数，同一张表的多个分片共用一个计量值，表结束后由tableFinished移除
+     */
+    public AtomicInteger queueDepth(String taskId, String table) {
+        return queueDepths.computeIfAbsent(key(taskId, table), k -> {
+            AtomicInteger depth = new AtomicInteger();
+            queueGauges.put(k, Gauge.builder("sync.pipeline.queue.depth", depth, AtomicInteger::get)
+                    .description("流水线队列中等待写入的批次数")
+                    .tags("task", taskId, "table", table)
+                    .register(registry));
+            return depth;
+        });
+    }
+
+    /**
+     * 表同步结束（成功或失败）后移除该表的队列深度指标，计数器保留供Prometheus计算总量
+     */
+    public void tableFinished(String taskId, String table) {
+        queueDepths.remove(key(taskId, table));
+        Gauge gauge = queueGauges.remove(key(taskId, table));
+        if (gauge != null) {
+            registry.remove(gauge);
+        }
+    }
+
+    private static String key(String taskId, String table) {
+        return taskId + "|" + table;
+    }
+
+    public void recordStatement(boolean success, long elapsedNanos) {
+        if (success) {
+            statementSuccess.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            statementFailure.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            failedStatements.increment();
+        }
+    }
+
+    /**
+     * 对比的各阶段耗时，phase为count或metadata
+     */
+    public void recordCompare(String phase, long elapsedNanos) {
+        compareTimers.computeIfAbsent(phase, p -> Timer.builder("compare.duration")
+                .description("库对比各阶段的耗时")
+                .tags("phase", p)
+                .register(registry)).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,10 +1,18 @@
 package org.zp.controller;
 
+import org.zp.conf.DataSourceManager;
+import org.zp.conf.MigrationMetrics;
 import org.zp.conf.DatabaseConfig;
+import org.zp.entity.CountStrategy;
 import org.zp.entity.DataBaseInfo;
+import org.zp.entity.ForeignKeyInfo;
+import org.zp.entity.SchemaMetadata;
+import org.zp.service.RowCountService;
+import org.zp.service.SchemaCatalogService;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -25,6 +33,24 @@ public class CompareDatabase {
     @Autowired
     private DatabaseConfig databaseConfig;
 
+    @Autowired
+    private DataSourceManager dataSourceManager;
+
+    @Autowired
+    private RowCountService rowCountService;
+
+    @Autowired
+    private MigrationMetrics metrics;
+
+    @Autowired
+    private SchemaCatalogService schemaCatalogService;
+
+    /**
+     * 对比时统计行数的方式，ESTIMATED只能粗略对比
+     */
+    @Value("${compare.count.strategy:PARALLEL}")
+    private CountStrategy countStrategy;
+
 
     @GetMapping("/getDifference")
     public void downloadExcel(HttpServletResponse response) {
@@ -32,11 +58,25 @@ public class CompareDatabase {
         DataBaseInfo mysqlDataBaseInfo = databaseConfig.getMysqlDataBaseInfo();
         DataBaseInfo gaussDataBaseInfo = databaseConfig.getGaussDataBaseInfo();
 
-        try {
-            DatabaseMetaData mysqlMetaData = getConnection(mysqlDataBaseInfo.getUrl(), mysqlDataBaseInfo.getUser(), mysqlDataBaseInfo.getPassword()).getMetaData();
-            DatabaseMetaData gaussMetaData = getConnection(gaussDataBaseInfo.getUrl(), gaussDataBaseInfo.getUser(), gaussDataBaseInfo.getPassword()).getMetaData();
-
-            List<String> tables = getTables(mysqlMetaData);
+        try (Connection mysqlConn = dataSourceManager.getConnection(mysqlDataBaseInfo);
+             Connection gaussConn = dataSourceManager.getConnection(gaussDataBaseInfo)) {
+            long start = System.nanoTime();
+            SchemaMetadata mysqlSchema = schemaCatalogService.getMetadata(mysqlDataBaseInfo, mysqlConn);
+            SchemaMetadata gaussSchema = schemaCatalogService.getMetadata(gaussDataBaseInfo, gaussConn);
+            metrics.recordCompare("metadata", System.nanoTime() - start);
+
+            List<String> tables = mysqlSchema.getTableNames();
+            start = System.nanoTime();
+            Map<String, Long> mysqlCounts = rowCountService.countRows(mysqlDataBaseInfo, tables, countStrategy);
+            // 高斯中缺少的表不计数，否则对不存在的表执行COUNT(*)会使整个对比失败
+            List<String> gaussTables = new ArrayList<>();
+            for (String table : tables) {
+                if (gaussSchema.getTable(table) != null) {
+                    gaussTables.add(table);
+                }
+            }
+            Map<String, Long> gaussCounts = rowCountService.countRows(gaussDataBaseInfo, gaussTables, countStrategy);
+            metrics.recordCompare("count", System.nanoTime() - start);
             Workbook workbook = new XSSFWorkbook();
             Sheet sheet = workbook.createSheet("Database Comparison");
 
@@ -44,8 +84,8 @@ public class CompareDatabase {
 
             int rowNum = 1;
             for (String table : tables) {
-                Map<String, Object> mysqlInfo = getTableInfo(mysqlMetaData, table, mysqlDataBaseInfo.getSchema());
-                Map<String, Object> gaussInfo = getTableInfo(gaussMetaData, table, gaussDataBaseInfo.getSchema());
+                Map<String, Object> mysqlInfo = getTableInfo(mysqlSchema.getTable(table), table, mysqlCounts);
+                Map<String, Object> gaussInfo = getTableInfo(gaussSchema.getTable(table), table, gaussCounts);
                 createRow(sheet, rowNum++, table, mysqlInfo, gaussInfo);
             }
 
@@ -61,55 +101,37 @@ public class CompareDatabase {
 
     }
 
-    private static Connection getConnection(String url, String user, String password) throws SQLException {
-        return DriverManager.getConnection(url, user, password);
-    }
-
-
-    private static List<String> getTables(DatabaseMetaData metaData) throws SQLException {
-        List<String> tables = new ArrayList<>();
-        ResultSet rs = metaData.getTables(null, null, "%", new String[]{"TABLE"});
-        while (rs.next()) {
-            tables.add(rs.getString("TABLE_NAME"));
-        }
-        return tables;
-    }
-
-    private static Map<String, Object> getTableInfo(DatabaseMetaData metaData, String tableName, String schema) throws SQLException {
+    /**
+     * table为null表示该库中没有这张表，主键、索引和外键都为空
+     */
+    private static Map<String, Object> getTableInfo(SchemaMetadata.Table table, String tableName,
+                                                    Map<String, Long> rowCounts) {
         Map<String, Object> info = new HashMap<>();
 
-        // Get row count
-        try (Statement stmt = metaData.getConnection().createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName);
-            if (rs.next()) {
-                info.put("rowCount", rs.getLong(1));
-            }
-        }
+        // Row count, counted up front for all tables
+        info.put("rowCount", rowCounts.getOrDefault(tableName, 0L));
 
-        // Get primary keys
-        List<String> primaryKeys = new ArrayList<>();
-        try (ResultSet rs = metaData.getPrimaryKeys(null, schema, tableName)) {
-            while (rs.next()) {
-                primaryKeys.add(rs.getString("COLUMN_NAME"));
-            }
-        }
+        // Primary keys
+        List<String> primaryKeys = table == null ? Collections.emptyList() : table.getPrimaryKey();
         info.put("primaryKeys", String.join(", ", primaryKeys));
 
-        // Get indexes
-        Set<String> indexes = new HashSet<>();
-        try (ResultSet rs = metaData.getIndexInfo(null, schema, tableName, false, false)) {
-            while (rs.next()) {
-                indexes.add(rs.getString("INDEX_NAME"));
+        // Indexes, including the primary key index as reported by getIndexInfo
+        Set<String> indexes = new LinkedHashSet<>();
+        if (table != null) {
+            if (table.getPrimaryKeyName() != null) {
+                indexes.add(table.getPrimaryKeyName());
             }
+            indexes.addAll(table.getIndexes().keySet());
         }
         info.put("indexes", String.join(", ", indexes));
 
-        // Get foreign keys
+        // Foreign keys
         List<String> foreignKeys = new ArrayList<>();
-        try (ResultSet rs = metaData.getImportedKeys(null, schema, tableName)) {
-            while (rs.next()) {
-                foreignKeys.add(rs.getString("FKCOLUMN_NAME") + " -> " +
-                        rs.getString("PKTABLE_NAME") + "." + rs.getString("PKCOLUMN_NAME"));
+        if (table != null) {
+            for (List<ForeignKeyInfo> columns : table.getForeignKeys().values()) {
+                for (ForeignKeyInfo fk : columns) {
+                    foreignKeys.add(fk.getFkColumnName() + " -> " + fk.getPkTableName() + "." + fk.getPkColumnName());
+                }
             }
         }
         info.put("foreignKeys", String.join(", ", foreignKeys));
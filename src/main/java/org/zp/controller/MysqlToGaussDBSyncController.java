@@ -1,14 +1,21 @@
 package org.zp.controller;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.zp.conf.DatabaseConfig;
 import org.zp.entity.DataBaseInfo;
 import org.zp.entity.ProcessInfo;
 import org.zp.entity.SqlFile;
+import org.zp.entity.TaskControl;
+import org.zp.service.BinlogSyncService;
 import org.zp.service.ExcuteSqlService;
 import org.zp.service.GenerateSqlService;
+import org.zp.service.MigrationTaskService;
+import org.zp.service.ProgressService;
 import org.zp.service.TransferringDataService;
 
 import java.util.HashMap;
@@ -32,12 +39,27 @@ public class MysqlToGaussDBSyncController {
 
     private final DatabaseConfig databaseConfig;
 
+    private final BinlogSyncService binlogSyncService;
 
-    public MysqlToGaussDBSyncController(GenerateSqlService generateSqlService, ExcuteSqlService excuteSqlService, TransferringDataService transferringDataService, DatabaseConfig databaseConfig) {
+    private final ProgressService progressService;
+
+    private final MigrationTaskService migrationTaskService;
+
+    /**
+     * 全量同步完成后是否自动开始增量同步
+     */
+    @Value("${cdc.enabled:false}")
+    private Boolean cdcEnabled;
+
+
+    public MysqlToGaussDBSyncController(GenerateSqlService generateSqlService, ExcuteSqlService excuteSqlService, TransferringDataService transferringDataService, DatabaseConfig databaseConfig, BinlogSyncService binlogSyncService, ProgressService progressService, MigrationTaskService migrationTaskService) {
         this.generateSqlService = generateSqlService;
         this.excuteSqlService = excuteSqlService;
         this.transferringDataService = transferringDataService;
         this.databaseConfig = databaseConfig;
+        this.binlogSyncService = binlogSyncService;
+        this.progressService = progressService;
+        this.migrationTaskService = migrationTaskService;
     }
 
     @GetMapping("/testConnection")
@@ -62,29 +84,180 @@ public class MysqlToGaussDBSyncController {
     }
 
 
+    /**
+     * 提交后立即返回，通过getProgress或progressStream查看进度
+     */
     @GetMapping("/startSync/{taskId}")
     @ResponseBody
     public ResponseEntity<Object> startSync(@PathVariable(name = "taskId") String taskId) {
-        Map<Object, Object> resultMap = new HashMap<>();
         DataBaseInfo mysql = databaseConfig.getMysqlDataBaseInfo();
         DataBaseInfo gauss = databaseConfig.getGaussDataBaseInfo();
-        if (generateSqlService.generateSql(mysql, taskId) &&
-                excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.STRUCTURE.getFileName(), taskId)) {
+        return submit(taskId, () -> {
+            TaskControl control = migrationTaskService.getControl(taskId);
+            if (generateSqlService.generateSql(mysql, taskId) &&
+                    excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.STRUCTURE.getFileName(), taskId, control)) {
+                transferringDataService.startSync(mysql, gauss, taskId);
+                executePostLoadSql(mysql, gauss, taskId);
+            } else if (!control.isCancelled()) {
+                ProcessInfo.getTaskProgressMap().get(taskId).setTaskStatus(ProcessInfo.TaskStatus.FAIL);
+            }
+        });
+    }
+
+    /**
+     * 表结构已存在时继续之前中断的同步，配合sync.checkpoint.enabled跳过已完成的表并从检查点继续
+     */
+    @GetMapping("/resumeSync/{taskId}")
+    @ResponseBody
+    public ResponseEntity<Object> resumeSync(@PathVariable(name = "taskId") String taskId) {
+        DataBaseInfo mysql = databaseConfig.getMysqlDataBaseInfo();
+        DataBaseInfo gauss = databaseConfig.getGaussDataBaseInfo();
+        return submit(taskId, () -> {
             transferringDataService.startSync(mysql, gauss, taskId);
-            //执行其他sql
-            ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
-            excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.INDEXES.getFileName(), taskId + 1);
-            processInfo.setProcess(92.00);
-            excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.FOREIGN_KEYS.getFileName(), taskId + 1);
-            processInfo.setProcess(95.00);
-            excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.CHECK_CONSTRAINTS.getFileName(), taskId + 1);
-            processInfo.setProcess(96.00);
-            excuteSqlService.executeSqlFile(gauss, mysql.getSchema() + SqlFile.VIEWS.getFileName(), taskId + 1);
-            processInfo.setProcess(100.00);
-            processInfo.setTaskStatus(ProcessInfo.TaskStatus.SUCCESS);
+            executePostLoadSql(mysql, gauss, taskId);
+        });
+    }
+
+    /**
+     * 增量同步配置了sync.incremental.tables的表，只复制高于上次高水位的数据
+     */
+    @GetMapping("/incrementalSync/{taskId}")
+    @ResponseBody
+    public ResponseEntity<Object> incrementalSync(@PathVariable(name = "taskId") String taskId) {
+        DataBaseInfo mysql = databaseConfig.getMysqlDataBaseInfo();
+        DataBaseInfo gauss = databaseConfig.getGaussDataBaseInfo();
+        return submit(taskId, () -> {
+            transferringDataService.startIncrementalSync(mysql, gauss, taskId);
+            if (!migrationTaskService.getControl(taskId).isCancelled()) {
+                ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+                processInfo.setProcess(100.00);
+                processInfo.setTaskStatus(ProcessInfo.TaskStatus.SUCCESS);
+            }
+        });
+    }
+
+    private ResponseEntity<Object> submit(String taskId, Runnable task) {
+        Map<Object, Object> resultMap = new HashMap<>();
+        if (migrationTaskService.submit(taskId, task)) {
+            resultMap.put("msg", "submitted");
+            return new ResponseEntity<>(resultMap, HttpStatus.OK);
+        }
+        resultMap.put("msg", "task already exists or too many tasks, please try again later");
+        return new ResponseEntity<>(resultMap, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * 在下一个批次或语句之前暂停，暂停期间连接保持占用
+     */
+    @GetMapping("/task/{taskId}/pause")
+    @ResponseBody
+    public ResponseEntity<Object> pauseTask(@PathVariable(name = "taskId") String taskId) {
+        return taskResult(migrationTaskService.pause(taskId));
+    }
+
+    @GetMapping("/task/{taskId}/resume")
+    @ResponseBody
+    public ResponseEntity<Object> resumeTask(@PathVariable(name = "taskId") String taskId) {
+        return taskResult(migrationTaskService.resume(taskId));
+    }
+
+    /**
+     * 中断执行中的语句并回滚未提交的批次，启用检查点时可以通过resumeSync继续
+     */
+    @GetMapping("/task/{taskId}/cancel")
+    @ResponseBody
+    public ResponseEntity<Object> cancelTask(@PathVariable(name = "taskId") String taskId) {
+        return taskResult(migrationTaskService.cancel(taskId));
+    }
+
+    private static ResponseEntity<Object> taskResult(boolean success) {
+        Map<Object, Object> resultMap = new HashMap<>();
+        if (success) {
             resultMap.put("msg", "ok");
             return new ResponseEntity<>(resultMap, HttpStatus.OK);
         }
+        resultMap.put("msg", "task not found");
+        return new ResponseEntity<>(resultMap, HttpStatus.NOT_FOUND);
+    }
+
+    private void executePostLoadSql(DataBaseInfo mysql, DataBaseInfo gauss, String taskId) {
+        //执行其他sql
+        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+        TaskControl control = migrationTaskService.getControl(taskId);
+        SqlFile[] postLoadFiles = {SqlFile.INDEXES, SqlFile.FOREIGN_KEYS, SqlFile.CHECK_CONSTRAINTS, SqlFile.VIEWS};
+        double[] postLoadProgress = {92.00, 95.00, 96.00};
+        boolean success = true;
+        for (int i = 0; i < postLoadFiles.length; i++) {
+            // 已经开始的文件在当前语句处回滚，其余文件不再执行
+            if (control.isCancelled()) {
+                return;
+            }
+            String fileName = mysql.getSchema() + postLoadFiles[i].getFileName();
+            if (postLoadFiles[i] == SqlFile.INDEXES) {
+                // 索引之间互不阻塞，分散到多个会话并行创建；外键和检查约束会锁住相关的表，仍按顺序执行
+                success &= excuteSqlService.executeIndexFile(gauss, fileName, taskId + 1, control);
+            } else {
+                success &= excuteSqlService.executeSqlFile(gauss, fileName, taskId + 1, control);
+            }
+            if (i < postLoadProgress.length) {
+                processInfo.setProcess(postLoadProgress[i]);
+            }
+        }
+        if (control.isCancelled()) {
+            return;
+        }
+        processInfo.setProcess(100.00);
+        // 数据已同步完成，但有索引、外键、检查约束或视图创建失败时任务记为失败，增量同步照常启动
+        processInfo.setTaskStatus(success ? ProcessInfo.TaskStatus.SUCCESS : ProcessInfo.TaskStatus.FAIL);
+        if (cdcEnabled) {
+            binlogSyncService.startStreaming(mysql, gauss);
+        }
+    }
+
+    /**
+     * 从记录的binlog位置开始增量同步
+     */
+    @GetMapping("/cdc/start")
+    @ResponseBody
+    public ResponseEntity<Object> startCdc() {
+        Map<Object, Object> resultMap = new HashMap<>();
+        if (binlogSyncService.startStreaming(databaseConfig.getMysqlDataBaseInfo(), databaseConfig.getGaussDataBaseInfo())) {
+            resultMap.put("msg", "ok");
+            return new ResponseEntity<>(resultMap, HttpStatus.OK);
+        }
+        resultMap.put("msg", "error");
+        return new ResponseEntity<>(resultMap, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * 切换前停止增量同步
+     */
+    @GetMapping("/cdc/stop")
+    @ResponseBody
+    public ResponseEntity<Object> stopCdc() {
+        binlogSyncService.stopStreaming();
+        return new ResponseEntity<>(binlogSyncService.getStatus(), HttpStatus.OK);
+    }
+
+    @GetMapping("/cdc/status")
+    @ResponseBody
+    public ResponseEntity<Object> getCdcStatus() {
+        return new ResponseEntity<>(binlogSyncService.getStatus(), HttpStatus.OK);
+    }
+
+    /**
+     * 把服务器本地的binlog文件应用到高斯
+     */
+    @GetMapping("/cdc/replay")
+    @ResponseBody
+    public ResponseEntity<Object> replayBinlog(@RequestParam(name = "file") String file) {
+        Map<Object, Object> resultMap = new HashMap<>();
+        long applied = binlogSyncService.replayFile(databaseConfig.getMysqlDataBaseInfo(), databaseConfig.getGaussDataBaseInfo(), file);
+        if (applied >= 0) {
+            resultMap.put("msg", "ok");
+            resultMap.put("appliedRows", applied);
+            return new ResponseEntity<>(resultMap, HttpStatus.OK);
+        }
         resultMap.put("msg", "error");
         return new ResponseEntity<>(resultMap, HttpStatus.INTERNAL_SERVER_ERROR);
     }
@@ -92,12 +265,20 @@ public class MysqlToGaussDBSyncController {
     @GetMapping("/getProgress/{taskId}")
     @ResponseBody
     public ResponseEntity<Object> getProgress(@PathVariable(name = "taskId") String taskId) {
-        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+        ProcessInfo processInfo = migrationTaskService.getProgress(taskId);
         if (processInfo == null) {
             processInfo = new ProcessInfo(0.00, ProcessInfo.TaskStatus.INIT, ProcessInfo.TaskType.GENERATE_SQL);
         }
         return new ResponseEntity<>(processInfo, HttpStatus.OK);
     }
 
+    /**
+     * 以Server-Sent Events推送进度，任务结束后服务端关闭连接
+     */
+    @GetMapping(value = "/progressStream/{taskId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter progressStream(@PathVariable(name = "taskId") String taskId) {
+        return progressService.subscribe(taskId);
+    }
+
 
 }
@@ -0,0 +1,41 @@
+package org.zp.entity;
+
+/**
+ * @Author zp
+ * @Date 2024/10/23 10:05
+ */
+
+public class BinlogPosition {
+
+    private String filename;
+    private long position;
+
+    public BinlogPosition(String filename, long position) {
+        this.filename = filename;
+        this.position = position;
+    }
+
+    public BinlogPosition() {
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    @Override
+    public String toString() {
+        return filename + ":" + position;
+    }
+}
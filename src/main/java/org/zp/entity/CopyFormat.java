@@ -0,0 +1,13 @@
+package org.zp.entity;
+
+/**
+ * @Author zp
+ * @Date 2024/10/21 14:00
+ */
+
+public enum CopyFormat {
+
+    TEXT,
+
+    CSV
+}
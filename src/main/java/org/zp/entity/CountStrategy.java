@@ -0,0 +1,29 @@
+package org.zp.entity;
+
+/**
+ * @Author zp
+ * @Date 2024/10/22 14:10
+ */
+
+public enum CountStrategy {
+
+    /**
+     * 逐表串行执行SELECT COUNT(*)
+     */
+    EXACT,
+
+    /**
+     * 多个连接并行执行SELECT COUNT(*)
+     */
+    PARALLEL,
+
+    /**
+     * 读取统计信息中的估算行数，MySQL为information_schema.TABLES.TABLE_ROWS，高斯为pg_class.reltuples
+     */
+    ESTIMATED,
+
+    /**
+     * 不统计行数，进度按已完成的表数计算
+     */
+    NONE
+}
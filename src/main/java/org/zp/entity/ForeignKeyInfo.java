@@ -1,11 +1,15 @@
 package org.zp.entity;
 
+import java.io.Serializable;
+
 /**
  * @Author zp
  * @Date 2024/10/12 18:10
  */
 
-public class ForeignKeyInfo {
+public class ForeignKeyInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String fkColumnName;
     private final String pkTableName;
@@ -1,11 +1,15 @@
 package org.zp.entity;
 
+import java.io.Serializable;
+
 /**
  * @Author zp
  * @Date 2024/10/12 18:09
  */
 
-public class IndexInfo {
+public class IndexInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String columnName;
     private final boolean unique;
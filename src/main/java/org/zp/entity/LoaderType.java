@@ -0,0 +1,24 @@
+package org.zp.entity;
+
+/**
+ * @Author zp
+ * @Date 2024/10/21 14:00
+ */
+
+public enum LoaderType {
+
+    /**
+     * INSERT + executeBatch，每行在服务端执行一次INSERT
+     */
+    INSERT,
+
+    /**
+     * 多行INSERT ... VALUES (...),(...)，适用于不允许使用COPY的场景
+     */
+    MULTI_VALUES,
+
+    /**
+     * COPY ... FROM STDIN批量装载
+     */
+    COPY
+}
@@ -19,8 +19,10 @@ public class ProcessInfo implements Serializable {
     public enum TaskStatus {
         INIT,
         RUNNING,
+        PAUSED,
         SUCCESS,
-        FAIL
+        FAIL,
+        CANCELLED
     }
 
     public enum TaskType {
@@ -29,9 +31,10 @@ public class ProcessInfo implements Serializable {
         TRANSFER_DATA
     }
 
-    private Double process;
+    // 由同步线程更新，进度推送线程读取
+    private volatile Double process;
 
-    private TaskStatus taskStatus;
+    private volatile TaskStatus taskStatus;
 
     private TaskType taskType;
 
@@ -0,0 +1,24 @@
+package org.zp.entity;
+
+/**
+ * @Author zp
+ * @Date 2024/10/21 10:26
+ */
+
+public enum ReadMode {
+
+    /**
+     * 驱动默认行为，整个结果集读入内存后再逐行处理
+     */
+    DEFAULT,
+
+    /**
+     * 逐行流式读取，TYPE_FORWARD_ONLY + fetchSize=Integer.MIN_VALUE
+     */
+    STREAM,
+
+    /**
+     * 服务端游标分批读取，MySQL连接池开启useCursorFetch并使用sync.fetch.size
+     */
+    CURSOR
+}
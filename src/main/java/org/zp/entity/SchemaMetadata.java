@@ -0,0 +1,189 @@
+package org.zp.entity;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个库（MySQL的当前库或高斯的schema）的表结构元数据：列、主键、索引、外键、检查约束、注释和视图定义。
+ * 表按名称排序，按名称查找不区分大小写
+ *
+ * @Author zp
+ * @Date 2024/10/30 10:20
+ */
+
+public class SchemaMetadata implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static class Column implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String typeName;
+        private final int size;
+        private final boolean nullable;
+        private final boolean autoIncrement;
+        private final String defaultValue;
+        private final String comment;
+
+        public Column(String name, String typeName, int size, boolean nullable, boolean autoIncrement,
+                      String defaultValue, String comment) {
+            this.name = name;
+            this.typeName = typeName;
+            this.size = size;
+            this.nullable = nullable;
+            this.autoIncrement = autoIncrement;
+            this.defaultValue = defaultValue;
+            this.comment = comment;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 与驱动getColumns返回的TYPE_NAME一致，MySQL如INT UNSIGNED、tinyint(1)为BIT，高斯为大写的pg_type名称
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isNullable() {
+            return nullable;
+        }
+
+        public boolean isAutoIncrement() {
+            return autoIncrement;
+        }
+
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+    }
+
+    public static class Table implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String comment;
+        private final List<Column> columns = new ArrayList<>();
+        private String primaryKeyName;
+        private final List<String> primaryKey = new ArrayList<>();
+        private final Map<String, List<IndexInfo>> indexes = new LinkedHashMap<>();
+        private final Map<String, List<ForeignKeyInfo>> foreignKeys = new LinkedHashMap<>();
+        private final Map<String, String> checks = new LinkedHashMap<>();
+
+        public Table(String name, String comment) {
+            this.name = name;
+            this.comment = comment;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getComment() {
+            return comment;
+        }
+
+        public List<Column> getColumns() {
+            return columns;
+        }
+
+        /**
+         * 主键约束名，MySQL为PRIMARY，没有主键时为null
+         */
+        public String getPrimaryKeyName() {
+            return primaryKeyName;
+        }
+
+        public void setPrimaryKeyName(String primaryKeyName) {
+            this.primaryKeyName = primaryKeyName;
+        }
+
+        public List<String> getPrimaryKey() {
+            return primaryKey;
+        }
+
+        /**
+         * 主键以外的索引，索引名到按顺序排列的列
+         */
+        public Map<String, List<IndexInfo>> getIndexes() {
+            return indexes;
+        }
+
+        /**
+         * 外键名到按顺序排列的列
+         */
+        public Map<String, List<ForeignKeyInfo>> getForeignKeys() {
+            return foreignKeys;
+        }
+
+        /**
+         * 约束名到检查表达式
+         */
+        public Map<String, String> getChecks() {
+            return checks;
+        }
+    }
+
+    private final Map<String, Table> tables = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, String> views = new LinkedHashMap<>();
+    private final String fingerprint;
+
+    public SchemaMetadata(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 加载时库结构的指纹，与当前指纹不同说明缓存已过期
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void addTable(Table table) {
+        tables.put(table.getName(), table);
+    }
+
+    public Collection<Table> getTables() {
+        return tables.values();
+    }
+
+    public List<String> getTableNames() {
+        List<String> names = new ArrayList<>();
+        for (Table table : tables.values()) {
+            names.add(table.getName());
+        }
+        return names;
+    }
+
+    /**
+     * 按表名查找，不存在时为null
+     */
+    public Table getTable(String name) {
+        return tables.get(name);
+    }
+
+    /**
+     * 视图名到SELECT语句
+     */
+    public Map<String, String> getViews() {
+        return views;
+    }
+}
@@ -0,0 +1,120 @@
+package org.zp.entity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 迁移任务的暂停、继续和取消控制。执行中的代码在批次、语句和表之间调用checkpoint，暂停时在此等待，
+ * 取消后抛出CancelledException；长时间执行的语句注册后，取消时通过Statement.cancel()中断
+ *
+ * @Author zp
+ * @Date 2024/10/28 10:05
+ */
+
+public class TaskControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskControl.class);
+
+    private final String taskId;
+
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean paused;
+
+    private volatile boolean cancelled;
+
+    public TaskControl(String taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * 注册执行中的语句，返回值关闭时取消注册，用于try-with-resources
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 任务被取消时由checkpoint抛出，沿用SQLException的回滚路径
+     */
+    public static class CancelledException extends SQLException {
+        public CancelledException(String taskId) {
+            super("任务 " + taskId + " 已取消");
+        }
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized void pause() {
+        if (!cancelled) {
+            paused = true;
+        }
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            paused = false;
+            notifyAll();
+        }
+        for (Statement stmt : statements) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                logger.warn("取消任务 {} 执行中的语句失败", taskId, e);
+            }
+        }
+    }
+
+    /**
+     * 暂停时阻塞直到继续或取消，已取消时抛出CancelledException
+     */
+    public void checkpoint() throws SQLException {
+        if (paused) {
+            synchronized (this) {
+                while (paused && !cancelled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancelledException(taskId);
+                    }
+                }
+            }
+        }
+        if (cancelled) {
+            throw new CancelledException(taskId);
+        }
+    }
+
+    public Registration register(Statement stmt) throws SQLException {
+        statements.add(stmt);
+        // 注册与取消并发时，取消可能没有看到这条语句
+        if (cancelled) {
+            statements.remove(stmt);
+            throw new CancelledException(taskId);
+        }
+        return () -> statements.remove(stmt);
+    }
+}
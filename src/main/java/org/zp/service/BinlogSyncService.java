@@ -0,0 +1,40 @@
+package org.zp.service;
+
+import org.zp.entity.BinlogPosition;
+import org.zp.entity.DataBaseInfo;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * @Author zp
+ * @Date 2024/10/23 10:08
+ */
+
+public interface BinlogSyncService {
+
+    /**
+     * 全量同步开始前记录MySQL当前的binlog位置，keepExisting为true时已有的位置不覆盖（从检查点继续的同步）
+     */
+    void recordStartPosition(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, boolean keepExisting)
+            throws SQLException;
+
+    /**
+     * 从记录的位置开始订阅binlog并持续应用到高斯，直到调用stopStreaming
+     */
+    boolean startStreaming(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo);
+
+    /**
+     * 停止订阅，已收到的完整事务会先提交
+     */
+    void stopStreaming();
+
+    /**
+     * 把一个binlog文件中的变更应用到高斯，用于离线验证或补数据
+     *
+     * @return 应用的行变更数
+     */
+    long replayFile(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String binlogFile);
+
+    Map<String, Object> getStatus();
+}
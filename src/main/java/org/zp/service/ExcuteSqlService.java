@@ -1,6 +1,7 @@
 package org.zp.service;
 
 import org.zp.entity.DataBaseInfo;
+import org.zp.entity.TaskControl;
 
 /**
  * @Author zp
@@ -11,5 +12,15 @@ public interface ExcuteSqlService {
 
     boolean executeSqlFile(DataBaseInfo dataBaseInfo, String fileName, String taskId);
 
+    /**
+     * 每条语句执行前检查任务是否暂停或取消，执行中的语句在取消时被中断
+     */
+    boolean executeSqlFile(DataBaseInfo dataBaseInfo, String fileName, String taskId, TaskControl control);
+
+    /**
+     * 在多个会话上并行创建索引，数据量大的表先开始。每条语句单独提交，取消时已建好的索引保留
+     */
+    boolean executeIndexFile(DataBaseInfo dataBaseInfo, String fileName, String taskId, TaskControl control);
+
     boolean testConnection(DataBaseInfo dataBaseInfo);
 }
@@ -0,0 +1,41 @@
+package org.zp.service;
+
+import org.zp.entity.ProcessInfo;
+import org.zp.entity.TaskControl;
+
+/**
+ * @Author zp
+ * @Date 2024/10/28 10:20
+ */
+
+public interface MigrationTaskService {
+
+    /**
+     * 提交任务到迁移线程池后立即返回，任务已存在或排队已满时返回false
+     */
+    boolean submit(String taskId, Runnable task);
+
+    /**
+     * 任务的控制对象，未通过submit提交的任务返回一个不会被暂停或取消的控制对象
+     */
+    TaskControl getControl(String taskId);
+
+    /**
+     * 任务当前进度的副本，暂停和取消状态以控制对象为准；任务不存在时返回null
+     */
+    ProcessInfo getProgress(String taskId);
+
+    /**
+     * 任务已提交且尚未结束（排队或执行中）
+     */
+    boolean isActive(String taskId);
+
+    boolean pause(String taskId);
+
+    boolean resume(String taskId);
+
+    /**
+     * 排队中的任务直接移除，执行中的任务在下一个检查点停止，并中断执行中的语句
+     */
+    boolean cancel(String taskId);
+}
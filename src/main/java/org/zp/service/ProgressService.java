@@ -0,0 +1,16 @@
+package org.zp.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * @Author zp
+ * @Date 2024/10/25 16:20
+ */
+
+public interface ProgressService {
+
+    /**
+     * 订阅任务进度，按固定间隔推送进度快照，任务成功或失败后推送最后一次并关闭
+     */
+    SseEmitter subscribe(String taskId);
+}
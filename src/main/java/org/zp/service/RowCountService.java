@@ -0,0 +1,21 @@
+package org.zp.service;
+
+import org.zp.entity.CountStrategy;
+import org.zp.entity.DataBaseInfo;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author zp
+ * @Date 2024/10/22 14:12
+ */
+
+public interface RowCountService {
+
+    /**
+     * 按指定策略统计各表行数，返回的Map表名不区分大小写，未统计到的表不在Map中
+     */
+    Map<String, Long> countRows(DataBaseInfo dataBaseInfo, List<String> tables, CountStrategy strategy) throws SQLException;
+}
@@ -0,0 +1,21 @@
+package org.zp.service;
+
+import org.zp.entity.DataBaseInfo;
+import org.zp.entity.SchemaMetadata;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * @Author zp
+ * @Date 2024/10/30 10:40
+ */
+
+public interface SchemaCatalogService {
+
+    /**
+     * 返回该库的表结构元数据，库结构指纹与缓存一致时直接返回缓存，否则用conn重新加载。
+     * 返回的对象在一次任务内共用，调用方不要修改
+     */
+    SchemaMetadata getMetadata(DataBaseInfo dataBaseInfo, Connection conn) throws SQLException;
+}
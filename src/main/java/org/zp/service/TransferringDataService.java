@@ -2,6 +2,8 @@ package org.zp.service;
 
 import org.zp.entity.DataBaseInfo;
 
+import java.util.Map;
+
 /**
  * @Author zp
  * @Date 2024/10/14 17:11
@@ -10,4 +12,14 @@ import org.zp.entity.DataBaseInfo;
 public interface TransferringDataService {
 
     void startSync(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String taskId);
+
+    /**
+     * 只同步配置了水位列的表中高于上次高水位的数据，按主键写入高斯
+     */
+    void startIncrementalSync(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String taskId);
+
+    /**
+     * 任务当前的同步进度快照：总行数、已同步行数、表数以及正在同步的表，任务不在同步数据时返回空Map
+     */
+    Map<String, Object> getProgressSnapshot(String taskId);
 }
@@ -0,0 +1,92 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按表自适应调整批大小（AIMD）：批次写满且耗时低于目标时每批加一个步长，耗时超过目标或突增到近期平均值的数倍时减半。
+ * 同一张表的各分片、各写入线程共用一个实例
+ *
+ * @Author zp
+ * @Date 2024/10/24 15:20
+ */
+
+class BatchTuner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchTuner.class);
+
+    /**
+     * 耗时超过近期平均值的该倍数视为高斯端延迟突增
+     */
+    private static final double SPIKE_FACTOR = 3.0;
+
+    /**
+     * 吞吐量比近期平均值低于该比例时停止增大批次
+     */
+    private static final double THROUGHPUT_DROP = 0.9;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final String tableName;
+    private final boolean enabled;
+    private final int minSize;
+    private final int maxSize;
+    private final int step;
+    private final long targetLatencyMs;
+
+    private int batchSize;
+    private double avgLatencyMs = -1;
+    private double avgRowsPerSecond = -1;
+
+    BatchTuner(String tableName, boolean enabled, int initialSize, int minSize, int maxSize, int step,
+               long targetLatencyMs) {
+        this.tableName = tableName;
+        this.enabled = enabled;
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.step = Math.max(1, step);
+        this.targetLatencyMs = targetLatencyMs;
+        this.batchSize = enabled ? Math.max(this.minSize, Math.min(this.maxSize, initialSize)) : initialSize;
+    }
+
+    synchronized int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 记录一次批次写入的行数、字节数和耗时并调整批大小
+     *
+     * @return 本次写入是否出现拥塞（耗时超过目标或突增）
+     */
+    synchronized boolean record(int rows, long bytes, long elapsedNanos) {
+        double latencyMs = elapsedNanos / 1_000_000.0;
+        double rowsPerSecond = rows * 1000.0 / Math.max(latencyMs, 0.001);
+        boolean congested = latencyMs > targetLatencyMs
+                || (avgLatencyMs > 0 && latencyMs > avgLatencyMs * SPIKE_FACTOR);
+
+        if (enabled) {
+            int previous = batchSize;
+            if (congested) {
+                batchSize = Math.max(minSize, batchSize / 2);
+            } else if (rows >= batchSize
+                    && (avgRowsPerSecond < 0 || rowsPerSecond >= avgRowsPerSecond * THROUGHPUT_DROP)) {
+                // 按字节数提前发送的批次行数不足，不增大
+                batchSize = Math.min(maxSize, batchSize + step);
+            }
+            if (batchSize != previous) {
+                logger.debug("表 {} 批次 {} 行 {} 字节，耗时 {} ms，{} 行/秒，批大小 {} -> {}",
+                        tableName, rows, bytes, String.format("%.1f", latencyMs), String.format("%.0f", rowsPerSecond),
+                        previous, batchSize);
+            }
+        }
+
+        avgLatencyMs = avgLatencyMs < 0 ? latencyMs : avgLatencyMs * (1 - SMOOTHING) + latencyMs * SMOOTHING;
+        avgRowsPerSecond = avgRowsPerSecond < 0 ? rowsPerSecond
+                : avgRowsPerSecond * (1 - SMOOTHING) + rowsPerSecond * SMOOTHING;
+        return congested;
+    }
+
+    synchronized String summary() {
+        return String.format("批大小 %d，平均耗时 %.1f ms，平均 %.0f 行/秒", batchSize, avgLatencyMs, avgRowsPerSecond);
+    }
+}
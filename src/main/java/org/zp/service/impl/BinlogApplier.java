@@ -0,0 +1,403 @@
+package org.zp.service.impl;
+
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zp.conf.DataSourceManager;
+import org.zp.entity.BinlogPosition;
+import org.zp.entity.DataBaseInfo;
+import org.zp.entity.DataTypeMappings;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 把binlog行事件应用到高斯。收到完整的事务后才放入待应用队列，队列行数达到batchRows或距上次提交超过
+ * flushIntervalMs时，在一个高斯事务内按binlog顺序应用并写入binlog位置。
+ * 写入按主键幂等：INSERT/UPDATE先UPDATE再对不存在的行INSERT，DELETE按主键删除，主键被修改的行先删旧行再写新行，
+ * 因此从全量同步开始前记录的位置重放到全量数据上结果一致
+ *
+ * @Author zp
+ * @Date 2024/10/23 11:00
+ */
+
+class BinlogApplier {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogApplier.class);
+
+    private enum ChangeKind {UPSERT, DELETE, KEY_CHANGE}
+
+    private static class TableMeta {
+        final String name;
+        final List<ColumnInfo> columns;
+        final String[] columnTypes;
+        final int[] keyIndexes;
+
+        TableMeta(String name, List<ColumnInfo> columns, String[] columnTypes, int[] keyIndexes) {
+            this.name = name;
+            this.columns = columns;
+            this.columnTypes = columnTypes;
+            this.keyIndexes = keyIndexes;
+        }
+    }
+
+    private static class RowChange {
+        final TableMeta table;
+        final ChangeKind kind;
+        final Object[] before;
+        final Object[] after;
+
+        RowChange(TableMeta table, ChangeKind kind, Object[] before, Object[] after) {
+            this.table = table;
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final DataSourceManager dataSourceManager;
+    private final DataBaseInfo mysqlDataBaseInfo;
+    private final Connection gaussConn;
+    private final BinlogPositionStore positionStore;
+    private final int batchRows;
+    private final long flushIntervalMs;
+
+    private final Map<Long, String> tableIds = new HashMap<>();
+    private final Map<String, TableMeta> tables = new HashMap<>();
+    private final Set<String> skippedTables = new HashSet<>();
+    private final List<RowChange> transaction = new ArrayList<>();
+    private final List<RowChange> pending = new ArrayList<>();
+    private BinlogPosition pendingPosition;
+    private String binlogFilename;
+    private long lastFlushTime = System.currentTimeMillis();
+    private boolean failed;
+
+    private volatile long appliedRows;
+    private volatile BinlogPosition appliedPosition;
+
+    BinlogApplier(DataSourceManager dataSourceManager, DataBaseInfo mysqlDataBaseInfo, Connection gaussConn,
+                  BinlogPositionStore positionStore, String binlogFilename, int batchRows, long flushIntervalMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.mysqlDataBaseInfo = mysqlDataBaseInfo;
+        this.gaussConn = gaussConn;
+        this.positionStore = positionStore;
+        this.binlogFilename = binlogFilename;
+        this.batchRows = batchRows;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * 处理一个事件，出错后不再处理后续事件，避免跳过失败的事务
+     */
+    synchronized void onEvent(Event event) throws SQLException, IOException {
+        if (failed) {
+            return;
+        }
+        try {
+            handleEvent(event);
+        } catch (SQLException | IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void handleEvent(Event event) throws SQLException, IOException {
+        EventHeaderV4 header = event.getHeader();
+        EventType type = header.getEventType();
+        switch (type) {
+            case ROTATE:
+                RotateEventData rotate = event.getData();
+                binlogFilename = rotate.getBinlogFilename();
+                break;
+            case TABLE_MAP:
+                TableMapEventData tableMap = event.getData();
+                if (mysqlDataBaseInfo.getSchema().equalsIgnoreCase(tableMap.getDatabase())) {
+                    tableIds.put(tableMap.getTableId(), tableMap.getTable());
+                } else {
+                    tableIds.remove(tableMap.getTableId());
+                }
+                break;
+            case WRITE_ROWS:
+            case EXT_WRITE_ROWS:
+                WriteRowsEventData write = event.getData();
+                TableMeta writeTable = tableFor(write.getTableId());
+                if (writeTable != null) {
+                    checkIncluded(writeTable, write.getIncludedColumns());
+                    for (Serializable[] row : write.getRows()) {
+                        transaction.add(new RowChange(writeTable, ChangeKind.UPSERT, null, normalizeRow(writeTable, row)));
+                    }
+                }
+                break;
+            case UPDATE_ROWS:
+            case EXT_UPDATE_ROWS:
+                UpdateRowsEventData update = event.getData();
+                TableMeta updateTable = tableFor(update.getTableId());
+                if (updateTable != null) {
+                    checkIncluded(updateTable, update.getIncludedColumnsBeforeUpdate());
+                    checkIncluded(updateTable, update.getIncludedColumns());
+                    for (Map.Entry<Serializable[], Serializable[]> row : update.getRows()) {
+                        Object[] before = normalizeRow(updateTable, row.getKey());
+                        Object[] after = normalizeRow(updateTable, row.getValue());
+                        ChangeKind kind = keyOf(updateTable, before).equals(keyOf(updateTable, after))
+                                ? ChangeKind.UPSERT : ChangeKind.KEY_CHANGE;
+                        transaction.add(new RowChange(updateTable, kind, before, after));
+                    }
+                }
+                break;
+            case DELETE_ROWS:
+            case EXT_DELETE_ROWS:
+                DeleteRowsEventData delete = event.getData();
+                TableMeta deleteTable = tableFor(delete.getTableId());
+                if (deleteTable != null) {
+                    checkIncluded(deleteTable, delete.getIncludedColumns());
+                    for (Serializable[] row : delete.getRows()) {
+                        transaction.add(new RowChange(deleteTable, ChangeKind.DELETE, normalizeRow(deleteTable, row), null));
+                    }
+                }
+                break;
+            case XID:
+                endTransaction(header.getNextPosition());
+                break;
+            case QUERY:
+                QueryEventData query = event.getData();
+                String sql = query.getSql().trim().toUpperCase();
+                if (sql.equals("COMMIT")) {
+                    // 非事务引擎的语句以COMMIT结束而不是XID
+                    endTransaction(header.getNextPosition());
+                } else if (isDdl(sql)) {
+                    // DDL不会同步到高斯，表结构变化后需要重新读取列信息
+                    if (mysqlDataBaseInfo.getSchema().equalsIgnoreCase(query.getDatabase())) {
+                        logger.warn("binlog中的DDL不会同步到高斯，请手工处理: {}", query.getSql());
+                    }
+                    tables.clear();
+                    skippedTables.clear();
+                    endTransaction(header.getNextPosition());
+                } else if (!sql.equals("BEGIN") && mysqlDataBaseInfo.getSchema().equalsIgnoreCase(query.getDatabase())) {
+                    logger.warn("语句格式的binlog事件不会同步，需要设置binlog_format=ROW: {}", query.getSql());
+                }
+                break;
+            case HEARTBEAT:
+                if (System.currentTimeMillis() - lastFlushTime >= flushIntervalMs) {
+                    flush();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void endTransaction(long nextPosition) throws SQLException {
+        pending.addAll(transaction);
+        transaction.clear();
+        pendingPosition = new BinlogPosition(binlogFilename, nextPosition);
+        if (pending.size() >= batchRows || System.currentTimeMillis() - lastFlushTime >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    /**
+     * 在一个高斯事务内应用所有完整的事务并保存binlog位置
+     */
+    synchronized void flush() throws SQLException {
+        if (failed || pendingPosition == null) {
+            return;
+        }
+        try {
+            int i = 0;
+            while (i < pending.size()) {
+                RowChange first = pending.get(i);
+                int j = i + 1;
+                // 相邻的同表同类变更合并为一个批次；主键修改必须逐行按顺序应用
+                if (first.kind != ChangeKind.KEY_CHANGE) {
+                    while (j < pending.size() && pending.get(j).table == first.table && pending.get(j).kind == first.kind) {
+                        j++;
+                    }
+                }
+                applyGroup(first.table, first.kind, pending.subList(i, j));
+                i = j;
+            }
+            positionStore.save(gaussConn, pendingPosition);
+            gaussConn.commit();
+        } catch (SQLException | RuntimeException e) {
+            failed = true;
+            try {
+                gaussConn.rollback();
+            } catch (SQLException rollbackEx) {
+                logger.error("回滚增量变更失败", rollbackEx);
+            }
+            throw e;
+        }
+        appliedRows += pending.size();
+        appliedPosition = pendingPosition;
+        logger.debug("已应用 {} 行变更，binlog位置: {}", pending.size(), pendingPosition);
+        pending.clear();
+        pendingPosition = null;
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    long getAppliedRows() {
+        return appliedRows;
+    }
+
+    BinlogPosition getAppliedPosition() {
+        return appliedPosition;
+    }
+
+    private void applyGroup(TableMeta table, ChangeKind kind, List<RowChange> changes) throws SQLException {
+        List<Object[]> befores = new ArrayList<>();
+        List<Object[]> afters = new ArrayList<>();
+        for (RowChange change : changes) {
+            if (change.before != null) befores.add(change.before);
+            if (change.after != null) afters.add(change.after);
+        }
+        switch (kind) {
+            case DELETE:
+                delete(table, befores);
+                break;
+            case KEY_CHANGE:
+                delete(table, befores);
+                upsert(table, afters);
+                break;
+            default:
+                upsert(table, afters);
+                break;
+        }
+    }
+
+    private void delete(TableMeta table, List<Object[]> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table.name);
+        appendKeyCondition(sql, table);
+        try (PreparedStatement stmt = gaussConn.prepareStatement(sql.toString())) {
+            for (Object[] row : rows) {
+                bindKey(stmt, table, row, 1);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private void upsert(TableMeta table, List<Object[]> rows) throws SQLException {
+        try (UpsertRowWriter writer = new UpsertRowWriter(gaussConn, table.name, table.columns, table.keyIndexes)) {
+            for (Object[] row : rows) {
+                writer.addRow(row);
+            }
+            writer.flush();
+        }
+    }
+
+    private static void appendKeyCondition(StringBuilder sql, TableMeta table) {
+        sql.append(" WHERE ");
+        for (int i = 0; i < table.keyIndexes.length; i++) {
+            if (i > 0) sql.append(" AND ");
+            sql.append(table.columns.get(table.keyIndexes[i]).name).append(" = ?");
+        }
+    }
+
+    private static void bindKey(PreparedStatement stmt, TableMeta table, Object[] row, int firstIndex) throws SQLException {
+        for (int i = 0; i < table.keyIndexes.length; i++) {
+            int column = table.keyIndexes[i];
+            table.columns.get(column).converter.setParameter(stmt, firstIndex + i, row[column]);
+        }
+    }
+
+    private static List<Object> keyOf(TableMeta table, Object[] row) {
+        return ColumnInfo.keyOf(row, table.keyIndexes);
+    }
+
+    private static Object[] normalizeRow(TableMeta table, Serializable[] row) throws IOException, SQLException {
+        if (row.length != table.columns.size()) {
+            throw new SQLException("表 " + table.name + " 的binlog列数(" + row.length + ")与当前表结构(" +
+                    table.columns.size() + ")不一致");
+        }
+        Object[] values = new Object[row.length];
+        for (int i = 0; i < row.length; i++) {
+            values[i] = BinlogValues.normalize(row[i], table.columns.get(i).mysqlType, table.columnTypes[i]);
+        }
+        return values;
+    }
+
+    private static void checkIncluded(TableMeta table, BitSet includedColumns) throws SQLException {
+        if (includedColumns != null && includedColumns.cardinality() < table.columns.size()) {
+            throw new SQLException("表 " + table.name + " 的binlog只包含部分列，需要设置binlog_row_image=FULL");
+        }
+    }
+
+    private TableMeta tableFor(long tableId) throws SQLException {
+        String tableName = tableIds.get(tableId);
+        if (tableName == null || skippedTables.contains(tableName)) {
+            return null;
+        }
+        TableMeta table = tables.get(tableName);
+        if (table == null) {
+            table = loadTableMeta(tableName);
+            if (table == null) {
+                skippedTables.add(tableName);
+                return null;
+            }
+            tables.put(tableName, table);
+        }
+        return table;
+    }
+
+    private TableMeta loadTableMeta(String tableName) throws SQLException {
+        String sql = "SELECT COLUMN_NAME, DATA_TYPE, COLUMN_TYPE, COLUMN_KEY FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION";
+        List<ColumnInfo> columns = new ArrayList<>();
+        List<String> columnTypes = new ArrayList<>();
+        List<Integer> keyIndexes = new ArrayList<>();
+        try (Connection mysqlConn = dataSourceManager.getConnection(mysqlDataBaseInfo);
+             PreparedStatement stmt = mysqlConn.prepareStatement(sql)) {
+            stmt.setString(1, mysqlDataBaseInfo.getSchema());
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String columnType = rs.getString("COLUMN_TYPE");
+                    // 与全量同步的类型名保持一致，tinyint(1)按BIT处理，高斯端为BOOLEAN
+                    String mysqlType = SchemaMetadataLoader.typeName(rs.getString("DATA_TYPE").toUpperCase(),
+                            columnType.toLowerCase());
+                    String gaussType = DataTypeMappings.getDataTypeMappings().getOrDefault(mysqlType, mysqlType);
+                    if ("PRI".equals(rs.getString("COLUMN_KEY"))) {
+                        keyIndexes.add(columns.size());
+                    }
+                    columns.add(new ColumnInfo(rs.getString("COLUMN_NAME"), mysqlType, gaussType,
+                            TypeConverters.forType(mysqlType)));
+                    columnTypes.add(columnType);
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            logger.warn("MySQL中不存在表 {}，忽略其binlog事件", tableName);
+            return null;
+        }
+        if (keyIndexes.isEmpty()) {
+            logger.error("表 {} 没有主键，无法按行应用增量变更，忽略其binlog事件", tableName);
+            return null;
+        }
+        return new TableMeta(tableName, columns, columnTypes.toArray(new String[0]),
+                keyIndexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static boolean isDdl(String sql) {
+        return sql.startsWith("ALTER") || sql.startsWith("CREATE") || sql.startsWith("DROP")
+                || sql.startsWith("RENAME") || sql.startsWith("TRUNCATE");
+    }
+}
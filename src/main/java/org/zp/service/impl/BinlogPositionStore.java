@@ -0,0 +1,83 @@
+package org.zp.service.impl;
+
+import org.zp.entity.BinlogPosition;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 增量同步的binlog位置，保存在高斯中并与应用的变更在同一事务内提交，重启后从该位置继续
+ *
+ * @Author zp
+ * @Date 2024/10/23 10:40
+ */
+
+class BinlogPositionStore {
+
+    private final String positionTable;
+    private final String schemaName;
+
+    BinlogPositionStore(String positionTable, String schemaName) {
+        this.positionTable = positionTable;
+        this.schemaName = schemaName;
+    }
+
+    void createTableIfAbsent(Connection gaussConn) throws SQLException {
+        try (Statement stmt = gaussConn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + positionTable + " (" +
+                    "schema_name VARCHAR(128) NOT NULL PRIMARY KEY, " +
+                    "binlog_file VARCHAR(255) NOT NULL, " +
+                    "binlog_position BIGINT NOT NULL, " +
+                    "updated_at TIMESTAMP)");
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    BinlogPosition load(Connection gaussConn) throws SQLException {
+        String sql = "SELECT binlog_file, binlog_position FROM " + positionTable + " WHERE schema_name = ?";
+        BinlogPosition position = null;
+        try (PreparedStatement stmt = gaussConn.prepareStatement(sql)) {
+            stmt.setString(1, schemaName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    position = new BinlogPosition(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        commitIfNeeded(gaussConn);
+        return position;
+    }
+
+    /**
+     * 写入位置，不提交，由调用方与变更数据一起提交
+     */
+    void save(Connection gaussConn, BinlogPosition position) throws SQLException {
+        String updateSql = "UPDATE " + positionTable + " SET binlog_file = ?, binlog_position = ?, " +
+                "updated_at = CURRENT_TIMESTAMP WHERE schema_name = ?";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(updateSql)) {
+            stmt.setString(1, position.getFilename());
+            stmt.setLong(2, position.getPosition());
+            stmt.setString(3, schemaName);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        String insertSql = "INSERT INTO " + positionTable + " (schema_name, binlog_file, binlog_position, updated_at) " +
+                "VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(insertSql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, position.getFilename());
+            stmt.setLong(3, position.getPosition());
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void commitIfNeeded(Connection gaussConn) throws SQLException {
+        if (!gaussConn.getAutoCommit()) {
+            gaussConn.commit();
+        }
+    }
+}
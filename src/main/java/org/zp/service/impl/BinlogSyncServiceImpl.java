@@ -0,0 +1,284 @@
+package org.zp.service.impl;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.BinaryLogFileReader;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.zp.conf.DataSourceManager;
+import org.zp.entity.BinlogPosition;
+import org.zp.entity.DataBaseInfo;
+import org.zp.service.BinlogSyncService;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于MySQL行格式binlog的增量同步，全量同步开始前记录binlog位置，全量完成后从该位置订阅并持续应用到高斯，
+ * 直到切换时停止
+ *
+ * @Author zp
+ * @Date 2024/10/23 14:10
+ */
+
+@Service
+public class BinlogSyncServiceImpl implements BinlogSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinlogSyncServiceImpl.class);
+
+    @Value("${cdc.position.table:sync_binlog_position}")
+    private String positionTable;
+
+    /**
+     * 订阅binlog时使用的server_id，不能与其他从库重复
+     */
+    @Value("${cdc.server.id:6868}")
+    private Long serverId;
+
+    /**
+     * 待应用的行变更达到该数量时提交一次
+     */
+    @Value("${cdc.batch.rows:1000}")
+    private Integer batchRows;
+
+    /**
+     * 距上次提交超过该时间时提交一次，同时作为MySQL心跳间隔
+     */
+    @Value("${cdc.flush.interval.ms:1000}")
+    private Long flushIntervalMs;
+
+    @Value("${cdc.connect.timeout.ms:10000}")
+    private Long connectTimeoutMs;
+
+    private final DataSourceManager dataSourceManager;
+
+    private BinaryLogClient client;
+    private BinlogApplier applier;
+    private Connection streamingConn;
+    private volatile String lastError;
+
+    public BinlogSyncServiceImpl(DataSourceManager dataSourceManager) {
+        this.dataSourceManager = dataSourceManager;
+    }
+
+    @Override
+    public void recordStartPosition(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo,
+                                    boolean keepExisting) throws SQLException {
+        try (Connection mysqlConn = dataSourceManager.getConnection(mysqlDataBaseInfo);
+             Connection gaussConn = dataSourceManager.getConnection(gaussDataBaseInfo)) {
+            checkBinlogSettings(mysqlConn);
+            BinlogPositionStore store = new BinlogPositionStore(positionTable, mysqlDataBaseInfo.getSchema());
+            store.createTableIfAbsent(gaussConn);
+            if (keepExisting) {
+                BinlogPosition existing = store.load(gaussConn);
+                if (existing != null) {
+                    logger.info("从检查点继续同步，保留之前记录的binlog位置: {}", existing);
+                    return;
+                }
+            }
+            BinlogPosition position = getMasterPosition(mysqlConn);
+            store.save(gaussConn, position);
+            if (!gaussConn.getAutoCommit()) {
+                gaussConn.commit();
+            }
+            logger.info("全量同步开始前的binlog位置: {}", position);
+        }
+    }
+
+    @Override
+    public synchronized boolean startStreaming(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo) {
+        if (client != null) {
+            logger.warn("增量同步已在运行");
+            return false;
+        }
+        lastError = null;
+        try {
+            streamingConn = dataSourceManager.getConnection(gaussDataBaseInfo);
+            streamingConn.setAutoCommit(false);
+            BinlogPositionStore store = new BinlogPositionStore(positionTable, mysqlDataBaseInfo.getSchema());
+            store.createTableIfAbsent(streamingConn);
+            BinlogPosition position = store.load(streamingConn);
+            if (position == null) {
+                try (Connection mysqlConn = dataSourceManager.getConnection(mysqlDataBaseInfo)) {
+                    checkBinlogSettings(mysqlConn);
+                    position = getMasterPosition(mysqlConn);
+                }
+                logger.warn("没有记录的binlog位置，从当前位置 {} 开始，之前的变更不会同步", position);
+            }
+
+            applier = new BinlogApplier(dataSourceManager, mysqlDataBaseInfo, streamingConn, store,
+                    position.getFilename(), batchRows, flushIntervalMs);
+            String[] hostAndPort = parseHostAndPort(mysqlDataBaseInfo.getUrl());
+            client = new BinaryLogClient(hostAndPort[0], Integer.parseInt(hostAndPort[1]),
+                    mysqlDataBaseInfo.getUser(), mysqlDataBaseInfo.getPassword());
+            client.setServerId(serverId);
+            client.setBinlogFilename(position.getFilename());
+            client.setBinlogPosition(position.getPosition());
+            client.setHeartbeatInterval(flushIntervalMs);
+            client.setEventDeserializer(createDeserializer());
+            BinlogApplier streamApplier = applier;
+            client.registerEventListener(event -> onEvent(streamApplier, event));
+            client.registerLifecycleListener(new BinaryLogClient.AbstractLifecycleListener() {
+                @Override
+                public void onCommunicationFailure(BinaryLogClient binaryLogClient, Exception ex) {
+                    logger.error("binlog连接异常", ex);
+                    lastError = ex.getMessage();
+                }
+
+                @Override
+                public void onEventDeserializationFailure(BinaryLogClient binaryLogClient, Exception ex) {
+                    logger.error("binlog事件解析失败", ex);
+                    lastError = ex.getMessage();
+                }
+            });
+            client.connect(connectTimeoutMs);
+            logger.info("开始增量同步，binlog位置: {}", position);
+            return true;
+        } catch (Exception e) {
+            logger.error("启动增量同步失败", e);
+            lastError = e.getMessage();
+            release();
+            return false;
+        }
+    }
+
+    private void onEvent(BinlogApplier streamApplier, Event event) {
+        try {
+            streamApplier.onEvent(event);
+        } catch (Exception e) {
+            logger.error("应用binlog变更失败，增量同步停止，修复后重新启动将从上次提交的位置继续", e);
+            lastError = e.getMessage();
+            // 不能在事件线程中断开连接
+            new Thread(this::stopStreaming, "binlog-stop").start();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public synchronized void stopStreaming() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.disconnect();
+            applier.flush();
+            logger.info("增量同步已停止，binlog位置: {}, 共应用 {} 行变更",
+                    applier.getAppliedPosition(), applier.getAppliedRows());
+        } catch (Exception e) {
+            logger.error("停止增量同步时出错", e);
+            lastError = e.getMessage();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public long replayFile(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String binlogFile) {
+        File file = new File(binlogFile);
+        try (Connection gaussConn = dataSourceManager.getConnection(gaussDataBaseInfo);
+             BinaryLogFileReader reader = new BinaryLogFileReader(file, createDeserializer())) {
+            gaussConn.setAutoCommit(false);
+            BinlogPositionStore store = new BinlogPositionStore(positionTable, mysqlDataBaseInfo.getSchema());
+            store.createTableIfAbsent(gaussConn);
+            BinlogApplier fileApplier = new BinlogApplier(dataSourceManager, mysqlDataBaseInfo, gaussConn, store,
+                    file.getName(), batchRows, Long.MAX_VALUE);
+            Event event;
+            while ((event = reader.readEvent()) != null) {
+                fileApplier.onEvent(event);
+            }
+            fileApplier.flush();
+            logger.info("binlog文件 {} 应用完成，共 {} 行变更，位置: {}",
+                    binlogFile, fileApplier.getAppliedRows(), fileApplier.getAppliedPosition());
+            return fileApplier.getAppliedRows();
+        } catch (Exception e) {
+            logger.error("应用binlog文件 {} 失败", binlogFile, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", client != null && client.isConnected());
+        if (applier != null) {
+            BinlogPosition position = applier.getAppliedPosition();
+            status.put("position", position == null ? null : position.toString());
+            status.put("appliedRows", applier.getAppliedRows());
+        }
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private void release() {
+        if (streamingConn != null) {
+            try {
+                streamingConn.close();
+            } catch (SQLException e) {
+                logger.error("关闭增量同步连接失败", e);
+            }
+        }
+        streamingConn = null;
+        client = null;
+    }
+
+    private static EventDeserializer createDeserializer() {
+        EventDeserializer deserializer = new EventDeserializer();
+        deserializer.setCompatibilityMode(
+                EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG_MICRO,
+                EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY);
+        return deserializer;
+    }
+
+    private static BinlogPosition getMasterPosition(Connection mysqlConn) throws SQLException {
+        try (Statement stmt = mysqlConn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW MASTER STATUS")) {
+            if (!rs.next()) {
+                throw new SQLException("MySQL未开启binlog");
+            }
+            return new BinlogPosition(rs.getString("File"), rs.getLong("Position"));
+        }
+    }
+
+    private static void checkBinlogSettings(Connection mysqlConn) throws SQLException {
+        try (Statement stmt = mysqlConn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW VARIABLES WHERE Variable_name IN ('binlog_format', 'binlog_row_image')")) {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                String value = rs.getString(2);
+                if ("binlog_format".equalsIgnoreCase(name) && !"ROW".equalsIgnoreCase(value)) {
+                    throw new SQLException("增量同步需要binlog_format=ROW，当前为" + value);
+                }
+                if ("binlog_row_image".equalsIgnoreCase(name) && !"FULL".equalsIgnoreCase(value)) {
+                    throw new SQLException("增量同步需要binlog_row_image=FULL，当前为" + value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从jdbc:mysql://host:port/db?...中取出主机和端口
+     */
+    static String[] parseHostAndPort(String url) {
+        String address = url.substring(url.indexOf("//") + 2);
+        int end = address.length();
+        for (char c : new char[]{'/', '?', ','}) {
+            int index = address.indexOf(c);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        address = address.substring(0, end);
+        int colon = address.lastIndexOf(':');
+        return colon < 0 ? new String[]{address, "3306"}
+                : new String[]{address.substring(0, colon), address.substring(colon + 1)};
+    }
+}
@@ -0,0 +1,149 @@
+package org.zp.service.impl;
+
+import com.github.shyiko.mysql.binlog.event.deserialization.json.JsonBinary;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 把binlog中的原始列值转换为与JDBC读取结果一致的Java类型，之后交给对应列的TypeConverter写入高斯。
+ * 反序列化器使用DATE_AND_TIME_AS_LONG_MICRO和CHAR_AND_BINARY_AS_BYTE_ARRAY模式，
+ * 日期时间为微秒数，字符类型为字节数组（按UTF-8解码）
+ *
+ * @Author zp
+ * @Date 2024/10/23 10:20
+ */
+
+final class BinlogValues {
+
+    private static final BigInteger UNSIGNED_LONG_OFFSET = BigInteger.ONE.shiftLeft(64);
+
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+
+    private static final long MICROS_PER_DAY = 86_400L * MICROS_PER_SECOND;
+
+    private BinlogValues() {
+    }
+
+    /**
+     * @param mysqlType  SchemaMetadataLoader.typeName得到的大写类型名，tinyint(1)为BIT，无符号整数带UNSIGNED后缀
+     * @param columnType information_schema.COLUMNS.COLUMN_TYPE，ENUM/SET需要从中解析成员
+     */
+    static Object normalize(Object raw, String mysqlType, String columnType) throws IOException {
+        if (raw == null) {
+            return null;
+        }
+        boolean unsigned = mysqlType.endsWith(" UNSIGNED");
+        String baseType = unsigned ? mysqlType.substring(0, mysqlType.length() - " UNSIGNED".length()) : mysqlType;
+        switch (baseType) {
+            // binlog中的整数总是按有符号数存放
+            case "TINYINT":
+                return unsigned ? ((Number) raw).intValue() & 0xFF : raw;
+            case "SMALLINT":
+                return unsigned ? ((Number) raw).intValue() & 0xFFFF : raw;
+            case "MEDIUMINT":
+                return unsigned ? ((Number) raw).intValue() & 0xFFFFFF : raw;
+            case "INT":
+            case "INTEGER":
+                return unsigned ? ((Number) raw).longValue() & 0xFFFFFFFFL : raw;
+            case "BIGINT":
+                long value = ((Number) raw).longValue();
+                return unsigned && value < 0 ? new BigDecimal(BigInteger.valueOf(value).add(UNSIGNED_LONG_OFFSET)) : raw;
+            case "DATETIME":
+                // DATETIME没有时区，微秒数按UTC还原为字面值
+                long micros = ((Number) raw).longValue();
+                return Timestamp.valueOf(LocalDateTime.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND),
+                        (int) Math.floorMod(micros, MICROS_PER_SECOND) * 1000, ZoneOffset.UTC));
+            case "TIMESTAMP":
+                long epochMicros = ((Number) raw).longValue();
+                Timestamp timestamp = new Timestamp(Math.floorDiv(epochMicros, MICROS_PER_SECOND) * 1000);
+                timestamp.setNanos((int) Math.floorMod(epochMicros, MICROS_PER_SECOND) * 1000);
+                return timestamp;
+            case "DATE":
+                return Date.valueOf(LocalDate.ofEpochDay(Math.floorDiv(((Number) raw).longValue(), MICROS_PER_DAY)));
+            case "TIME":
+                return Time.valueOf(LocalTime.ofNanoOfDay(Math.floorMod(((Number) raw).longValue(), MICROS_PER_DAY) * 1000));
+            case "ENUM":
+                return enumMember(((Number) raw).intValue(), columnType);
+            case "SET":
+                return setMembers(((Number) raw).longValue(), columnType);
+            case "JSON":
+                return JsonBinary.parseAsString((byte[]) raw);
+            case "BIT":
+                // 高斯端为BOOLEAN，tinyint(1)在binlog中是整数
+                if (raw instanceof Number) {
+                    return ((Number) raw).intValue() != 0;
+                }
+                return !((BitSet) raw).isEmpty();
+            default:
+                if (raw instanceof byte[] && isText(baseType)) {
+                    return new String((byte[]) raw, StandardCharsets.UTF_8);
+                }
+                return raw;
+        }
+    }
+
+    private static boolean isText(String baseType) {
+        return baseType.endsWith("CHAR") || baseType.endsWith("TEXT");
+    }
+
+    /**
+     * ENUM在binlog中是从1开始的成员序号，0表示非法值写入的空字符串
+     */
+    private static String enumMember(int index, String columnType) {
+        List<String> members = parseMembers(columnType);
+        return index > 0 && index <= members.size() ? members.get(index - 1) : "";
+    }
+
+    private static String setMembers(long mask, String columnType) {
+        List<String> members = parseMembers(columnType);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < members.size(); i++) {
+            if ((mask & (1L << i)) != 0) {
+                if (result.length() > 0) result.append(',');
+                result.append(members.get(i));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 解析enum('a','b''c')或set(...)中的成员，成员中的单引号以两个单引号转义
+     */
+    static List<String> parseMembers(String columnType) {
+        List<String> members = new ArrayList<>();
+        int start = columnType.indexOf('(');
+        StringBuilder member = null;
+        for (int i = start + 1; i < columnType.length(); i++) {
+            char c = columnType.charAt(i);
+            if (member == null) {
+                if (c == '\'') {
+                    member = new StringBuilder();
+                }
+            } else if (c == '\'') {
+                if (i + 1 < columnType.length() && columnType.charAt(i + 1) == '\'') {
+                    member.append('\'');
+                    i++;
+                } else {
+                    members.add(member.toString());
+                    member = null;
+                }
+            } else {
+                member.append(c);
+            }
+        }
+        return members;
+    }
+}
@@ -0,0 +1,150 @@
+package org.zp.service.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分片检查点存储，检查点保存在高斯的检查点表中，与该分片的数据在同一事务内提交，
+ * 因此检查点与已提交的数据始终一致
+ *
+ * @Author zp
+ * @Date 2024/10/22 16:45
+ */
+
+class CheckpointStore {
+
+    private final String checkpointTable;
+    private final String schemaName;
+
+    CheckpointStore(String checkpointTable, String schemaName) {
+        this.checkpointTable = checkpointTable;
+        this.schemaName = schemaName;
+    }
+
+    void createTableIfAbsent(Connection gaussConn) throws SQLException {
+        try (Statement stmt = gaussConn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + checkpointTable + " (" +
+                    "schema_name VARCHAR(128) NOT NULL, " +
+                    "table_name VARCHAR(128) NOT NULL, " +
+                    "chunk_start BIGINT NOT NULL, " +
+                    "chunk_end BIGINT NOT NULL, " +
+                    "key_column VARCHAR(128), " +
+                    "last_key BIGINT, " +
+                    "row_count BIGINT NOT NULL, " +
+                    "finished BOOLEAN NOT NULL, " +
+                    "updated_at TIMESTAMP, " +
+                    "PRIMARY KEY (schema_name, table_name, chunk_start))");
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    List<TableChunk> load(Connection gaussConn, String tableName) throws SQLException {
+        List<TableChunk> chunks = new ArrayList<>();
+        String sql = "SELECT key_column, chunk_start, chunk_end, last_key, row_count, finished FROM " + checkpointTable +
+                " WHERE schema_name = ? AND table_name = ? ORDER BY chunk_start";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(sql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    TableChunk chunk = new TableChunk(tableName, rs.getString(1), rs.getLong(2), rs.getLong(3));
+                    long lastKey = rs.getLong(4);
+                    chunk.lastKey = rs.wasNull() ? null : lastKey;
+                    chunk.rowCount = rs.getLong(5);
+                    chunk.finished = rs.getBoolean(6);
+                    chunks.add(chunk);
+                }
+            }
+        }
+        commitIfNeeded(gaussConn);
+        return chunks;
+    }
+
+    /**
+     * 是否存在上一次未完成同步留下的检查点
+     */
+    boolean hasCheckpoints(Connection gaussConn) throws SQLException {
+        boolean found;
+        try (PreparedStatement stmt = gaussConn.prepareStatement("SELECT 1 FROM " + checkpointTable + " WHERE schema_name = ? LIMIT 1")) {
+            stmt.setString(1, schemaName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                found = rs.next();
+            }
+        }
+        commitIfNeeded(gaussConn);
+        return found;
+    }
+
+    /**
+     * 登记一张表的全部分片并提交，恢复时按登记的分片继续复制
+     */
+    void register(Connection gaussConn, List<TableChunk> chunks) throws SQLException {
+        for (TableChunk chunk : chunks) {
+            save(gaussConn, chunk);
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    /**
+     * 写入分片进度，不提交，由调用方与数据一起提交
+     */
+    void save(Connection gaussConn, TableChunk chunk) throws SQLException {
+        String updateSql = "UPDATE " + checkpointTable + " SET last_key = ?, row_count = ?, finished = ?, " +
+                "updated_at = CURRENT_TIMESTAMP WHERE schema_name = ? AND table_name = ? AND chunk_start = ?";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(updateSql)) {
+            setLastKey(stmt, 1, chunk);
+            stmt.setLong(2, chunk.rowCount);
+            stmt.setBoolean(3, chunk.finished);
+            stmt.setString(4, schemaName);
+            stmt.setString(5, chunk.tableName);
+            stmt.setLong(6, chunk.start);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        String insertSql = "INSERT INTO " + checkpointTable + " (schema_name, table_name, chunk_start, chunk_end, " +
+                "key_column, last_key, row_count, finished, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(insertSql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, chunk.tableName);
+            stmt.setLong(3, chunk.start);
+            stmt.setLong(4, chunk.end);
+            stmt.setString(5, chunk.keyColumn);
+            setLastKey(stmt, 6, chunk);
+            stmt.setLong(7, chunk.rowCount);
+            stmt.setBoolean(8, chunk.finished);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 整个同步成功结束后清除检查点，下次同步重新开始
+     */
+    void clear(Connection gaussConn) throws SQLException {
+        try (PreparedStatement stmt = gaussConn.prepareStatement("DELETE FROM " + checkpointTable + " WHERE schema_name = ?")) {
+            stmt.setString(1, schemaName);
+            stmt.executeUpdate();
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    private static void setLastKey(PreparedStatement stmt, int index, TableChunk chunk) throws SQLException {
+        if (chunk.lastKey == null) {
+            stmt.setNull(index, Types.BIGINT);
+        } else {
+            stmt.setLong(index, chunk.lastKey);
+        }
+    }
+
+    private static void commitIfNeeded(Connection gaussConn) throws SQLException {
+        if (!gaussConn.getAutoCommit()) {
+            gaussConn.commit();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.zp.service.impl;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 同步时使用的列信息
+ *
+ * @Author zp
+ * @Date 2024/10/21 14:02
+ */
+
+class ColumnInfo {
+
+    final String name;
+    final String mysqlType;
+    final String gaussType;
+    final TypeConverter converter;
+
+    ColumnInfo(String name, String mysqlType, String gaussType, TypeConverter converter) {
+        this.name = name;
+        this.mysqlType = mysqlType;
+        this.gaussType = gaussType;
+        this.converter = converter;
+    }
+
+    /**
+     * 把结果集当前行按列转换到values中
+     */
+    static Object[] readRow(ResultSet rs, List<ColumnInfo> columns, Object[] values) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            values[i] = columns.get(i).converter.convert(rs, i + 1);
+        }
+        return values;
+    }
+
+    /**
+     * 估算一行数据占用的字节数
+     */
+    static long sizeOf(Object[] values) {
+        long size = 0;
+        for (Object value : values) {
+            size += TypeConverters.sizeOf(value);
+        }
+        return size;
+    }
+
+    /**
+     * 取出一行的主键值，用于在内存中按主键比较行。byte[]没有按内容实现equals，包装为ByteBuffer后按内容比较
+     */
+    static List<Object> keyOf(Object[] row, int[] keyIndexes) {
+        Object[] key = new Object[keyIndexes.length];
+        for (int i = 0; i < key.length; i++) {
+            Object value = row[keyIndexes[i]];
+            key[i] = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+        }
+        return Arrays.asList(key);
+    }
+}
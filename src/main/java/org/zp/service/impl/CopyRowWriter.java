@@ -0,0 +1,265 @@
+package org.zp.service.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.zp.entity.CopyFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 把行编码为COPY文本/CSV格式，通过COPY ... FROM STDIN写入高斯
+ *
+ * @Author zp
+ * @Date 2024/10/21 14:20
+ */
+
+class CopyRowWriter implements RowWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 缓存的字符数超过该值时立即发送到COPY流，COPY数据可以在任意位置拆分发送
+     */
+    private static final int MAX_BUFFER_CHARS = 1 << 20;
+
+    /**
+     * BLOB按该大小分段读取并编码后直接写入COPY流，不在缓存中拼接完整的十六进制字符串
+     */
+    private static final int LOB_CHUNK_BYTES = 64 * 1024;
+
+    private final Connection gaussConn;
+    private final String copySql;
+    private final CopyFormat format;
+    private final List<ColumnInfo> columns;
+    private final boolean[] binaryLobs;
+    private final StringBuilder buffer = new StringBuilder(8192);
+    private byte[] lobChunk;
+    private byte[] hexChunk;
+    private CopyIn copyIn;
+
+    CopyRowWriter(Connection gaussConn, String tableName, List<ColumnInfo> columns, CopyFormat format) {
+        this.gaussConn = gaussConn;
+        this.format = format;
+        this.columns = columns;
+        this.binaryLobs = new boolean[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            binaryLobs[i] = TypeConverters.isBinaryLob(columns.get(i).mysqlType);
+        }
+        StringBuilder sql = new StringBuilder("COPY ").append(tableName).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(columns.get(i).name);
+        }
+        sql.append(") FROM STDIN");
+        if (format == CopyFormat.CSV) {
+            sql.append(" WITH (FORMAT 'csv')");
+        }
+        this.copySql = sql.toString();
+    }
+
+    @Override
+    public void addRow(Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                buffer.append(format == CopyFormat.CSV ? ',' : '\t');
+            }
+            if (values[i] instanceof byte[] && ((byte[]) values[i]).length > LOB_CHUNK_BYTES) {
+                appendLob(new ByteArrayInputStream((byte[]) values[i]));
+            } else {
+                appendValue(buffer, values[i], format);
+            }
+        }
+        endRow();
+    }
+
+    @Override
+    public void addRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                buffer.append(format == CopyFormat.CSV ? ',' : '\t');
+            }
+            if (binaryLobs[i]) {
+                InputStream in = rs.getBinaryStream(i + 1);
+                if (in == null) {
+                    appendValue(buffer, null, format);
+                } else {
+                    appendLob(in);
+                }
+            } else {
+                appendValue(buffer, columns.get(i).converter.convert(rs, i + 1), format);
+            }
+        }
+        endRow();
+    }
+
+    @Override
+    public long bufferedBytes() {
+        return buffer.length();
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.setLength(0);
+        copyStream().writeToCopy(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        flush();
+        if (copyIn != null) {
+            copyIn.endCopy();
+            copyIn = null;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        buffer.setLength(0);
+        // 未正常结束的COPY需要取消，否则连接无法继续使用
+        if (copyIn != null && copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+        copyIn = null;
+    }
+
+    private void endRow() throws SQLException {
+        buffer.append('\n');
+        if (buffer.length() >= MAX_BUFFER_CHARS) {
+            flush();
+        }
+    }
+
+    private CopyIn copyStream() throws SQLException {
+        if (copyIn == null) {
+            copyIn = gaussConn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        }
+        return copyIn;
+    }
+
+    /**
+     * 分段读取BLOB并编码为十六进制后直接写入COPY流，格式与appendTextValue/appendCsvValue中的bytea相同
+     */
+    private void appendLob(InputStream in) throws SQLException {
+        if (lobChunk == null) {
+            lobChunk = new byte[LOB_CHUNK_BYTES];
+            hexChunk = new byte[LOB_CHUNK_BYTES * 2];
+        }
+        buffer.append(format == CopyFormat.CSV ? "\"\\x" : "\\\\x");
+        flush();
+        CopyIn copy = copyStream();
+        try (InputStream lob = in) {
+            int read;
+            while ((read = lob.read(lobChunk)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    hexChunk[i * 2] = (byte) HEX[(lobChunk[i] >> 4) & 0x0F];
+                    hexChunk[i * 2 + 1] = (byte) HEX[lobChunk[i] & 0x0F];
+                }
+                copy.writeToCopy(hexChunk, 0, read * 2);
+            }
+        } catch (IOException e) {
+            throw new SQLException("读取BLOB数据失败", e);
+        }
+        if (format == CopyFormat.CSV) {
+            buffer.append('"');
+        }
+    }
+
+    static void appendRow(StringBuilder out, Object[] values, CopyFormat format) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(format == CopyFormat.CSV ? ',' : '\t');
+            }
+            appendValue(out, values[i], format);
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, Object value, CopyFormat format) {
+        if (format == CopyFormat.CSV) {
+            appendCsvValue(out, value);
+        } else {
+            appendTextValue(out, value);
+        }
+    }
+
+    private static void appendTextValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("\\N");
+        } else if (value instanceof byte[]) {
+            // 文本格式中反斜杠需要转义，\\x在服务端还原为bytea的十六进制格式\x
+            out.append("\\\\x");
+            appendHex(out, (byte[]) value);
+        } else {
+            String text = toText(value);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\':
+                        out.append("\\\\");
+                        break;
+                    case '\t':
+                        out.append("\\t");
+                        break;
+                    case '\n':
+                        out.append("\\n");
+                        break;
+                    case '\r':
+                        out.append("\\r");
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+        }
+    }
+
+    private static void appendCsvValue(StringBuilder out, Object value) {
+        // 未加引号的空值表示NULL，其余值一律加引号，空字符串也不会被当成NULL
+        if (value == null) {
+            return;
+        }
+        out.append('"');
+        if (value instanceof byte[]) {
+            out.append("\\x");
+            appendHex(out, (byte[]) value);
+        } else {
+            String text = toText(value);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    out.append('"');
+                }
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "t" : "f";
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        return value.toString();
+    }
+
+    private static void appendHex(StringBuilder out, byte[] bytes) {
+        for (byte b : bytes) {
+            out.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.zp.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * 单表的死信文件，记录无法写入高斯的行。每行一条记录，以制表符分隔：SQLState、错误信息、各列的列名=值，
+ * NULL写为\N，二进制写为\x开头的十六进制
+ *
+ * @Author zp
+ * @Date 2024/10/25 10:10
+ */
+
+class DeadLetterFile implements AutoCloseable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String tableName;
+    private final File file;
+    private Writer out;
+    private long rows;
+
+    DeadLetterFile(File directory, String tableName) {
+        this.tableName = tableName;
+        this.file = new File(directory, tableName + ".dead");
+    }
+
+    synchronized void write(List<ColumnInfo> columns, Object[] values, Throwable error) throws SQLException {
+        try {
+            if (out == null) {
+                File directory = file.getParentFile();
+                if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("无法创建目录 " + directory);
+                }
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                out.write("# " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + " " + tableName + "\n");
+            }
+            StringBuilder line = new StringBuilder();
+            line.append(sqlState(error)).append('\t');
+            appendEscaped(line, String.valueOf(error.getMessage()));
+            for (int i = 0; i < columns.size(); i++) {
+                line.append('\t').append(columns.get(i).name).append('=');
+                Object value = values[i];
+                if (value == null) {
+                    line.append("\\N");
+                } else if (value instanceof byte[]) {
+                    line.append("\\x");
+                    for (byte b : (byte[]) value) {
+                        line.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+                    }
+                } else {
+                    appendEscaped(line, value.toString());
+                }
+            }
+            out.write(line.append('\n').toString());
+            out.flush();
+            rows++;
+        } catch (IOException e) {
+            throw new SQLException("写入死信文件 " + file + " 失败", e);
+        }
+    }
+
+    synchronized long getRows() {
+        return rows;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * 批处理异常的SQLState通常在getNextException中
+     */
+    static String sqlState(Throwable error) {
+        if (error instanceof SQLException) {
+            SQLException e = (SQLException) error;
+            while (e.getSQLState() == null && e.getNextException() != null) {
+                e = e.getNextException();
+            }
+            return e.getSQLState();
+        }
+        return null;
+    }
+
+    private static void appendEscaped(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package org.zp.service.impl;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.zp.conf.DataSourceManager;
+import org.zp.conf.MigrationMetrics;
 import org.zp.entity.DataBaseInfo;
 import org.zp.entity.ProcessInfo;
+import org.zp.entity.TaskControl;
 import org.zp.service.ExcuteSqlService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,13 +16,26 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @Author zp
@@ -29,17 +47,64 @@ public class ExcuteSqlServiceImpl implements ExcuteSqlService {
 
     private static final Logger logger = LoggerFactory.getLogger(ExcuteSqlServiceImpl.class);
 
+    private static final Pattern CREATE_INDEX_TABLE =
+            Pattern.compile("^\\s*CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+\\S+\\s+ON\\s+([^\\s(]+)", Pattern.CASE_INSENSITIVE);
+
+    private static final String GAUSS_TABLE_SIZE_SQL =
+            "SELECT c.relname, pg_relation_size(c.oid) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE c.relkind = 'r' AND n.nspname = ?";
+
+    private static final int PROGRESS_LOG_INTERVAL = 1000;
+
+    /**
+     * 执行SQL脚本时一次批量发送的语句数，1表示逐条执行
+     */
+    @Value("${sql.batch.size:100}")
+    private Integer sqlBatchSize;
+
+    /**
+     * 同时创建索引的会话数上限，1表示按文件顺序串行执行
+     */
+    @Value("${index.build.workers:4}")
+    private Integer indexBuildWorkers;
+
+    /**
+     * 建索引会话的maintenance_work_mem，总内存约为该值乘以index.build.workers，为空时使用数据库默认值
+     */
+    @Value("${index.build.maintenance-work-mem:}")
+    private String indexMaintenanceWorkMem;
+
+    private final DataSourceManager dataSourceManager;
+
+    private final MigrationMetrics metrics;
+
+    public ExcuteSqlServiceImpl(DataSourceManager dataSourceManager, MigrationMetrics metrics) {
+        this.dataSourceManager = dataSourceManager;
+        this.metrics = metrics;
+    }
+
     @Override
     public boolean executeSqlFile(DataBaseInfo dataBaseInfo, String fileName, String taskId) {
+        return executeSqlFile(dataBaseInfo, fileName, taskId, new TaskControl(taskId));
+    }
+
+    @Override
+    public boolean executeSqlFile(DataBaseInfo dataBaseInfo, String fileName, String taskId, TaskControl control) {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(dataBaseInfo.getUrl(), dataBaseInfo.getUser(), dataBaseInfo.getPassword());
+            conn = dataSourceManager.getConnection(dataBaseInfo);
             conn.setAutoCommit(false);
             setSearchPath(conn, dataBaseInfo);
-            List<String> sqlStatements = readSqlFile(fileName);
-            boolean success = executeStatements(conn, sqlStatements, taskId);
+            boolean success;
+            try (SqlStatementReader reader = openSqlFile(fileName)) {
+                success = executeStatements(conn, reader, fileName, taskId, control);
+            }
             conn.commit();
-            logger.info(fileName + "所有SQL语句执行成功！");
+            if (success) {
+                logger.info(fileName + "所有SQL语句执行成功！");
+            } else {
+                logger.warn("{} 部分SQL语句执行失败，已提交执行成功的语句", fileName);
+            }
             return success;
         } catch (Exception e) {
             try {
@@ -64,14 +129,161 @@ public class ExcuteSqlServiceImpl implements ExcuteSqlService {
     }
 
     @Override
-    public boolean testConnection(DataBaseInfo dataBaseInfo) {
+    public boolean executeIndexFile(DataBaseInfo dataBaseInfo, String fileName, String taskId, TaskControl control) {
+        List<String> sqlStatements;
+        try {
+            sqlStatements = readSqlFile(fileName);
+        } catch (IOException e) {
+            logger.error("执行SQL文件时发生错误", e);
+            return false;
+        }
+        int workers = Math.min(Math.min(indexBuildWorkers, dataSourceManager.connectionsPerTask()), sqlStatements.size());
+        if (workers <= 1) {
+            return executeSqlFile(dataBaseInfo, fileName, taskId, control);
+        }
+
+        Map<String, Long> tableSizes;
+        try (Connection conn = dataSourceManager.getConnection(dataBaseInfo)) {
+            tableSizes = loadTableSizes(conn, dataBaseInfo.getSchema());
+        } catch (SQLException e) {
+            logger.warn("读取表大小失败，按文件顺序创建索引", e);
+            tableSizes = new TreeMap<>();
+        }
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(orderBySize(sqlStatements, tableSizes));
+        logger.info("并行创建索引，共{}条语句，会话数: {}，maintenance_work_mem: {}", queue.size(), workers,
+                indexMaintenanceWorkMem.isEmpty() ? "默认" : indexMaintenanceWorkMem);
+
+        int total = queue.size();
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("index-build-"));
+        try {
+            for (int i = 0; i < workers; i++) {
+                executor.submit(() -> {
+                    try (Connection conn = dataSourceManager.getConnection(dataBaseInfo)) {
+                        buildIndexes(conn, dataBaseInfo, queue, control, total, finished, failures);
+                    } catch (TaskControl.CancelledException e) {
+                        logger.info("任务 {} 已取消，停止创建索引", taskId);
+                    } catch (SQLException e) {
+                        logger.error("建索引会话失败", e);
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("索引创建中，已完成: [{}/{}]", finished.get(), total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            control.cancel();
+            executor.shutdownNow();
+            return false;
+        }
+        logger.info("索引创建完成，总计: {}，成功: {}，失败: {}", total, finished.get() - failures.get(), failures.get());
+        if (failures.get() > 0) {
+            // 与逐条执行时一致，有语句失败时标记任务失败
+            ProcessInfo.taskProgressMap.computeIfAbsent(taskId,
+                    id -> new ProcessInfo(10.00, ProcessInfo.TaskStatus.RUNNING, ProcessInfo.TaskType.EXECUTE_SQL))
+                    .setTaskStatus(ProcessInfo.TaskStatus.FAIL);
+        }
+        return failures.get() == 0 && !control.isCancelled();
+    }
+
+    /**
+     * 一个会话从队列中依次取语句执行直到队列为空，每条语句自动提交
+     */
+    private void buildIndexes(Connection conn, DataBaseInfo dataBaseInfo, BlockingQueue<String> queue,
+                              TaskControl control, int total, AtomicInteger finished, AtomicInteger failures)
+            throws SQLException {
+        conn.setAutoCommit(true);
+        setSearchPath(conn, dataBaseInfo);
+        boolean tuned = !indexMaintenanceWorkMem.isEmpty();
+        if (tuned) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET maintenance_work_mem = '" + indexMaintenanceWorkMem + "'");
+            }
+        }
         try {
-            Connection conn = DriverManager.getConnection(dataBaseInfo.getUrl(), dataBaseInfo.getUser(), dataBaseInfo.getPassword());
-            conn.prepareStatement("SELECT 1");
-            conn.close();
+            String sql;
+            while ((sql = queue.poll()) != null) {
+                control.checkpoint();
+                long start = System.nanoTime();
+                try (Statement stmt = conn.createStatement();
+                     TaskControl.Registration ignored = control.register(stmt)) {
+                    stmt.execute(sql);
+                    metrics.recordStatement(true, System.nanoTime() - start);
+                    logger.info("索引进度: [{}/{}] 耗时 {} ms: {}", finished.incrementAndGet(), total,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), sql);
+                } catch (SQLException e) {
+                    if (control.isCancelled()) {
+                        throw new TaskControl.CancelledException(control.getTaskId());
+                    }
+                    metrics.recordStatement(false, System.nanoTime() - start);
+                    finished.incrementAndGet();
+                    failures.incrementAndGet();
+                    logger.error("创建索引失败: {}，SQL语句: {}", e.getMessage(), sql);
+                }
+            }
+        } finally {
+            // 连接归还连接池前恢复会话设置
+            if (tuned && !conn.isClosed()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("RESET maintenance_work_mem");
+                } catch (SQLException e) {
+                    logger.warn("恢复maintenance_work_mem失败", e);
+                }
+            }
+        }
+    }
+
+    private Map<String, Long> loadTableSizes(Connection conn, String schema) throws SQLException {
+        Map<String, Long> sizes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (PreparedStatement stmt = conn.prepareStatement(GAUSS_TABLE_SIZE_SQL)) {
+            stmt.setString(1, schema == null || schema.isEmpty() ? conn.getSchema() : schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sizes.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * 按索引所在表的大小从大到小排列，大小相同或未知时保持文件中的顺序。最大的表最先开始，其余会话处理小表，
+     * 整体耗时接近最大表的建索引时间
+     */
+    static List<String> orderBySize(List<String> sqlStatements, Map<String, Long> tableSizes) {
+        List<String> ordered = new ArrayList<>(sqlStatements);
+        ordered.sort(Comparator.comparingLong((String sql) -> {
+            String table = indexTable(sql);
+            return table == null ? 0L : tableSizes.getOrDefault(table, 0L);
+        }).reversed());
+        return ordered;
+    }
+
+    /**
+     * CREATE [UNIQUE] INDEX语句所在的表，其他语句返回null
+     */
+    static String indexTable(String sql) {
+        Matcher matcher = CREATE_INDEX_TABLE.matcher(sql);
+        if (!matcher.find()) {
+            return null;
+        }
+        String table = matcher.group(1).replace("\"", "");
+        int dot = table.lastIndexOf('.');
+        return dot >= 0 ? table.substring(dot + 1) : table;
+    }
+
+    @Override
+    public boolean testConnection(DataBaseInfo dataBaseInfo) {
+        try (Connection conn = dataSourceManager.getConnection(dataBaseInfo);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT 1");
             return true;
         } catch (SQLException e) {
-            e.printStackTrace();
+            logger.error("测试数据库连接失败: {}", dataBaseInfo.getUrl(), e);
             return false;
         }
     }
@@ -83,59 +295,164 @@ public class ExcuteSqlServiceImpl implements ExcuteSqlService {
         }
     }
 
+    private SqlStatementReader openSqlFile(String fileName) throws IOException {
+        return new SqlStatementReader(new BufferedReader(new FileReader(fileName)));
+    }
+
+    /**
+     * 一次读出所有语句，只用于语句数量有限、需要重新排序的索引文件
+     */
     private List<String> readSqlFile(String fileName) throws IOException {
         List<String> sqlStatements = new ArrayList<>();
-        StringBuilder statement = new StringBuilder();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("--")) {
-                    continue;
-                }
-                statement.append(line);
-                if (line.endsWith(";")) {
-                    sqlStatements.add(statement.toString());
-                    statement.setLength(0);
-                }
+        try (SqlStatementReader reader = openSqlFile(fileName)) {
+            String sql;
+            while ((sql = reader.next()) != null) {
+                sqlStatements.add(sql);
             }
         }
-
         logger.info("成功读取SQL文件，共有{}条SQL语句", sqlStatements.size());
         return sqlStatements;
     }
 
-    private boolean executeStatements(Connection conn, List<String> sqlStatements, String taskId) {
-        int totalStatements = sqlStatements.size();
-        int successCount = 0;
-        int failureCount = 0;
+    /**
+     * 一个脚本的执行统计
+     */
+    private static class ScriptStats {
+        int total;
+        int success;
+        int failure;
+    }
+
+    /**
+     * 边读边执行，连续的DDL/DML按sql.batch.size条一组批量发送。批次失败时回滚到批次前的保存点，
+     * 再逐条执行找出失败的语句，失败的语句各自回滚，不影响文件中的其他语句
+     */
+    private boolean executeStatements(Connection conn, SqlStatementReader reader, String fileName, String taskId,
+                                      TaskControl control) throws SQLException, IOException {
+        ScriptStats stats = new ScriptStats();
         ProcessInfo processInfo = new ProcessInfo(10.00, ProcessInfo.TaskStatus.RUNNING, ProcessInfo.TaskType.EXECUTE_SQL);
-        for (int i = 0; i < sqlStatements.size(); i++) {
-            String sql = sqlStatements.get(i);
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(sql);
-                successCount++;
-                logger.info("执行进度: [{}/{}] SQL执行成功", (i + 1), totalStatements);
-                processInfo.setProcess(processInfo.getProcess()+ ((i + 1) / totalStatements) * 0.2);
-                ProcessInfo.taskProgressMap.put(taskId, processInfo);
+        ProcessInfo.taskProgressMap.put(taskId, processInfo);
+        List<String> batch = new ArrayList<>();
+        List<Integer> batchLines = new ArrayList<>();
+        String sql;
+        while ((sql = reader.next()) != null) {
+            if (!isBatchable(sql)) {
+                executeBatch(conn, batch, batchLines, fileName, taskId, control, stats, processInfo);
+                executeSingle(conn, sql, reader.getStatementLine(), fileName, taskId, control, stats, processInfo);
+                continue;
+            }
+            batch.add(sql);
+            batchLines.add(reader.getStatementLine());
+            if (batch.size() >= sqlBatchSize) {
+                executeBatch(conn, batch, batchLines, fileName, taskId, control, stats, processInfo);
+            }
+        }
+        executeBatch(conn, batch, batchLines, fileName, taskId, control, stats, processInfo);
+        processInfo.setProcess(processInfo.getProcess() + 0.2);
+        ProcessInfo.taskProgressMap.put(taskId, processInfo);
+        logger.info("SQL执行完成，总计: {}，成功: {}，失败: {}", stats.total, stats.success, stats.failure);
+        return stats.failure == 0;
+    }
+
+    private void executeBatch(Connection conn, List<String> batch, List<Integer> batchLines, String fileName,
+                              String taskId, TaskControl control, ScriptStats stats, ProcessInfo processInfo)
+            throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            executeSingle(conn, batch.get(0), batchLines.get(0), fileName, taskId, control, stats, processInfo);
+        } else {
+            control.checkpoint();
+            Savepoint savepoint = conn.setSavepoint();
+            long start = System.nanoTime();
+            boolean batchFailed = false;
+            try (Statement stmt = conn.createStatement();
+                 TaskControl.Registration ignored = control.register(stmt)) {
+                for (String sql : batch) {
+                    stmt.addBatch(sql);
+                }
+                stmt.executeBatch();
+                conn.releaseSavepoint(savepoint);
             } catch (SQLException e) {
-                failureCount++;
-                String errorMessage = String.format(
-                        "[%s] 执行SQL失败: %s%n错误信息: %s%nSQL语句: %s%n%n",
-                        LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                        e.getMessage(),
-                        e.getSQLState(),
-                        sql
-                );
-                logger.error(errorMessage);
-                processInfo.setTaskStatus(ProcessInfo.TaskStatus.FAIL);
-                processInfo.setProcess(processInfo.getProcess() + ((i + 1) / totalStatements) * 0.2);
-                ProcessInfo.taskProgressMap.put(taskId, processInfo);
-            }
-        }
-        logger.info("SQL执行完成，总计: {}，成功: {}，失败: {}",
-                totalStatements, successCount, failureCount);
-        return failureCount == 0;
+                // 取消中断的语句不计为失败，整个文件回滚
+                if (control.isCancelled()) {
+                    throw new TaskControl.CancelledException(taskId);
+                }
+                conn.rollback(savepoint);
+                batchFailed = true;
+                logger.debug("批量执行失败，逐条重新执行以定位失败的语句: {}", e.getMessage());
+            }
+            if (batchFailed) {
+                for (int i = 0; i < batch.size(); i++) {
+                    executeSingle(conn, batch.get(i), batchLines.get(i), fileName, taskId, control, stats, processInfo);
+                }
+            } else {
+                long elapsed = (System.nanoTime() - start) / batch.size();
+                for (int i = 0; i < batch.size(); i++) {
+                    metrics.recordStatement(true, elapsed);
+                }
+                stats.total += batch.size();
+                stats.success += batch.size();
+                logProgress(stats, stats.total - batch.size());
+            }
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private void executeSingle(Connection conn, String sql, int line, String fileName, String taskId,
+                               TaskControl control, ScriptStats stats, ProcessInfo processInfo) throws SQLException {
+        control.checkpoint();
+        Savepoint savepoint = conn.setSavepoint();
+        long start = System.nanoTime();
+        stats.total++;
+        try (Statement stmt = conn.createStatement();
+             TaskControl.Registration ignored = control.register(stmt)) {
+            stmt.execute(sql);
+            conn.releaseSavepoint(savepoint);
+            metrics.recordStatement(true, System.nanoTime() - start);
+            stats.success++;
+            logger.debug("第{}行SQL执行成功", line);
+        } catch (SQLException e) {
+            // 取消中断的语句不计为失败，整个文件回滚
+            if (control.isCancelled()) {
+                throw new TaskControl.CancelledException(taskId);
+            }
+            conn.rollback(savepoint);
+            metrics.recordStatement(false, System.nanoTime() - start);
+            stats.failure++;
+            String errorMessage = String.format(
+                    "[%s] 执行SQL失败: %s%n错误信息: %s%n位置: %s 第%d行%nSQL语句: %s%n%n",
+                    LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                    e.getMessage(),
+                    e.getSQLState(),
+                    fileName,
+                    line,
+                    sql
+            );
+            logger.error(errorMessage);
+            processInfo.setTaskStatus(ProcessInfo.TaskStatus.FAIL);
+            ProcessInfo.taskProgressMap.put(taskId, processInfo);
+        }
+        logProgress(stats, stats.total - 1);
+    }
+
+    /**
+     * 每执行PROGRESS_LOG_INTERVAL条语句打印一次进度
+     */
+    private void logProgress(ScriptStats stats, int previousTotal) {
+        if (stats.total / PROGRESS_LOG_INTERVAL > previousTotal / PROGRESS_LOG_INTERVAL) {
+            logger.info("执行进度: 已执行{}条，成功: {}，失败: {}", stats.total, stats.success, stats.failure);
+        }
+    }
+
+    /**
+     * 查询类语句会返回结果集，不能放进批次
+     */
+    static boolean isBatchable(String sql) {
+        String head = sql.length() > 10 ? sql.substring(0, 10).toUpperCase() : sql.toUpperCase();
+        return !(head.startsWith("SELECT") || head.startsWith("WITH") || head.startsWith("SHOW")
+                || head.startsWith("EXPLAIN") || head.startsWith("VALUES") || head.startsWith("("));
     }
 }
@@ -0,0 +1,119 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 使用INSERT + addBatch/executeBatch写入
+ *
+ * @Author zp
+ * @Date 2024/10/21 14:10
+ */
+
+class InsertRowWriter implements RowWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(InsertRowWriter.class);
+
+    private final String tableName;
+    private final List<ColumnInfo> columns;
+    private final PreparedStatement stmt;
+    private long bufferedBytes;
+
+    InsertRowWriter(Connection gaussConn, String tableName, List<ColumnInfo> columns) throws SQLException {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.stmt = gaussConn.prepareStatement(generateInsertSql(tableName, columns));
+    }
+
+    @Override
+    public void addRow(Object[] values) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnInfo column = columns.get(i);
+            try {
+                column.converter.setParameter(stmt, i + 1, values[i]);
+                bufferedBytes += TypeConverters.sizeOf(values[i]);
+            } catch (SQLException e) {
+                logger.error("转换数据时出错 - 表: {}, 列: {}, MySQL类型: {}, 高斯类型: {}, 值: {}",
+                        tableName, column.name, column.mysqlType, column.gaussType, values[i]);
+                throw e;
+            }
+        }
+        stmt.addBatch();
+    }
+
+    @Override
+    public void addRow(ResultSet rs) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnInfo column = columns.get(i);
+            try {
+                bufferedBytes += column.converter.transfer(rs, i + 1, stmt, i + 1);
+            } catch (SQLException e) {
+                // 不记录值本身，LOB等大字段的值不适合写入日志
+                logger.error("转换数据时出错 - 表: {}, 列: {}, MySQL类型: {}, 高斯类型: {}, 值大小: {} 字节",
+                        tableName, column.name, column.mysqlType, column.gaussType, valueSize(rs, i + 1));
+                throw e;
+            }
+        }
+        stmt.addBatch();
+    }
+
+    @Override
+    public long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        bufferedBytes = 0;
+        int[] results = stmt.executeBatch();
+        int successCount = 0;
+        for (int result : results) {
+            if (result >= 0) successCount++;
+        }
+        logger.debug("批处理执行完成: 成功 {}/{}", successCount, results.length);
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        flush();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stmt.close();
+    }
+
+    /**
+     * 出错列的值按字节计算的大小，读取失败时返回-1
+     */
+    private static long valueSize(ResultSet rs, int columnIndex) {
+        try {
+            byte[] value = rs.getBytes(columnIndex);
+            return value == null ? 0 : value.length;
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    private static String generateInsertSql(String tableName, List<ColumnInfo> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder values = new StringBuilder(") VALUES (");
+
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(columns.get(i).name);
+            values.append("?");
+        }
+
+        return sql.toString() + values.toString() + ")";
+    }
+}
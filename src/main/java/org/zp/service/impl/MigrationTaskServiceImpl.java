@@ -0,0 +1,190 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.zp.entity.ProcessInfo;
+import org.zp.entity.TaskControl;
+import org.zp.service.MigrationTaskService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 迁移任务在独立的线程池中执行，请求线程提交后立即返回。同时执行的任务数和排队数有上限，超出时拒绝提交
+ *
+ * @Author zp
+ * @Date 2024/10/28 10:30
+ */
+
+@Service
+public class MigrationTaskServiceImpl implements MigrationTaskService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MigrationTaskServiceImpl.class);
+
+    /**
+     * 同时执行的迁移任务数，每个任务有独立的同步状态和线程池，连接池需要容纳所有任务的连接
+     */
+    @Value("${task.workers:2}")
+    private Integer taskWorkers;
+
+    /**
+     * 等待执行的任务数上限
+     */
+    @Value("${task.queue.capacity:4}")
+    private Integer taskQueueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, TaskControl> controls = new ConcurrentHashMap<>();
+
+    private final Map<String, Future<?>> futures = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(taskWorkers, taskWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(taskQueueCapacity), new CustomizableThreadFactory("migration-task-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        controls.values().forEach(TaskControl::cancel);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean submit(String taskId, Runnable task) {
+        TaskControl control = new TaskControl(taskId);
+        if (controls.putIfAbsent(taskId, control) != null) {
+            logger.warn("任务 {} 已存在", taskId);
+            return false;
+        }
+        ProcessInfo.getTaskProgressMap().put(taskId,
+                new ProcessInfo(0.00, ProcessInfo.TaskStatus.INIT, ProcessInfo.TaskType.GENERATE_SQL));
+        try {
+            // 提交与登记Future之间任务可能已结束，由任务自身的finally清理
+            synchronized (control) {
+                futures.put(taskId, executor.submit(() -> run(control, task)));
+            }
+            logger.info("任务 {} 已提交，执行中: {}，排队: {}", taskId, executor.getActiveCount(), executor.getQueue().size());
+            return true;
+        } catch (RejectedExecutionException e) {
+            controls.remove(taskId);
+            ProcessInfo.getTaskProgressMap().remove(taskId);
+            logger.warn("任务 {} 被拒绝，排队任务已达上限 {}", taskId, taskQueueCapacity);
+            return false;
+        }
+    }
+
+    private void run(TaskControl control, Runnable task) {
+        String taskId = control.getTaskId();
+        try {
+            control.checkpoint();
+            logger.info("任务 {} 开始执行", taskId);
+            task.run();
+        } catch (TaskControl.CancelledException e) {
+            logger.info("任务 {} 在开始前被取消", taskId);
+        } catch (Exception e) {
+            logger.error("任务 {} 执行失败", taskId, e);
+            setStatus(taskId, ProcessInfo.TaskStatus.FAIL);
+        } finally {
+            if (control.isCancelled()) {
+                setStatus(taskId, ProcessInfo.TaskStatus.CANCELLED);
+                logger.info("任务 {} 已取消", taskId);
+            }
+            synchronized (control) {
+                futures.remove(taskId);
+            }
+            controls.remove(taskId, control);
+        }
+    }
+
+    @Override
+    public TaskControl getControl(String taskId) {
+        TaskControl control = controls.get(taskId);
+        return control != null ? control : new TaskControl(taskId);
+    }
+
+    @Override
+    public ProcessInfo getProgress(String taskId) {
+        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+        if (processInfo == null) {
+            return null;
+        }
+        // 各阶段开始时会换成新的RUNNING状态的ProcessInfo，暂停和取消不能只记录在ProcessInfo中
+        ProcessInfo.TaskStatus status = processInfo.getTaskStatus();
+        TaskControl control = controls.get(taskId);
+        if (control != null && control.isCancelled()) {
+            status = ProcessInfo.TaskStatus.CANCELLED;
+        } else if (control != null && control.isPaused()) {
+            status = ProcessInfo.TaskStatus.PAUSED;
+        }
+        return new ProcessInfo(processInfo.getProcess(), status, processInfo.getTaskType());
+    }
+
+    @Override
+    public boolean isActive(String taskId) {
+        return controls.containsKey(taskId);
+    }
+
+    @Override
+    public boolean pause(String taskId) {
+        TaskControl control = controls.get(taskId);
+        if (control == null || control.isCancelled()) {
+            return false;
+        }
+        control.pause();
+        setStatus(taskId, ProcessInfo.TaskStatus.PAUSED);
+        logger.info("任务 {} 已暂停", taskId);
+        return true;
+    }
+
+    @Override
+    public boolean resume(String taskId) {
+        TaskControl control = controls.get(taskId);
+        if (control == null || !control.isPaused()) {
+            return false;
+        }
+        control.resume();
+        setStatus(taskId, ProcessInfo.TaskStatus.RUNNING);
+        logger.info("任务 {} 已继续", taskId);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(String taskId) {
+        TaskControl control = controls.get(taskId);
+        if (control == null) {
+            return false;
+        }
+        control.cancel();
+        Future<?> future;
+        synchronized (control) {
+            future = futures.get(taskId);
+        }
+        // 尚未开始的任务从队列中移除，执行中的任务不中断线程，由检查点和Statement.cancel()停止
+        if (future != null && executor.remove((Runnable) future)) {
+            futures.remove(taskId);
+            controls.remove(taskId, control);
+            setStatus(taskId, ProcessInfo.TaskStatus.CANCELLED);
+        }
+        logger.info("任务 {} 正在取消", taskId);
+        return true;
+    }
+
+    private static void setStatus(String taskId, ProcessInfo.TaskStatus status) {
+        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+        if (processInfo != null) {
+            processInfo.setTaskStatus(status);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用多行INSERT ... VALUES (...),(...)写入，每条语句携带多行，减少服务端的执行次数
+ *
+ * @Author zp
+ * @Date 2024/10/22 10:15
+ */
+
+class MultiValuesRowWriter implements RowWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiValuesRowWriter.class);
+
+    /**
+     * 协议中绑定参数个数用short表示，单条语句的参数不能超过该值
+     */
+    static final int MAX_BIND_PARAMETERS = Short.MAX_VALUE;
+
+    private final Connection gaussConn;
+    private final String tableName;
+    private final List<ColumnInfo> columns;
+    private final int rowsPerStatement;
+    /**
+     * 按行数缓存的语句，只有完整语句和2的幂次行数的尾部语句，数量不超过 log2(rowsPerStatement) + 1
+     */
+    private final Map<Integer, PreparedStatement> statements = new HashMap<>();
+    private final List<Object[]> pendingRows = new ArrayList<>();
+    private int batchedStatements;
+    private long bufferedBytes;
+
+    MultiValuesRowWriter(Connection gaussConn, String tableName, List<ColumnInfo> columns, int batchSize) {
+        this.gaussConn = gaussConn;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.rowsPerStatement = Math.max(1, Math.min(batchSize, MAX_BIND_PARAMETERS / Math.max(1, columns.size())));
+    }
+
+    @Override
+    public void addRow(Object[] values) throws SQLException {
+        addPendingRow(values.clone());
+    }
+
+    @Override
+    public void addRow(ResultSet rs) throws SQLException {
+        addPendingRow(ColumnInfo.readRow(rs, columns, new Object[columns.size()]));
+    }
+
+    private void addPendingRow(Object[] values) throws SQLException {
+        pendingRows.add(values);
+        bufferedBytes += ColumnInfo.sizeOf(values);
+        if (pendingRows.size() >= rowsPerStatement) {
+            PreparedStatement stmt = statementFor(rowsPerStatement);
+            bindRows(stmt, pendingRows);
+            pendingRows.clear();
+            stmt.addBatch();
+            batchedStatements++;
+        }
+    }
+
+    @Override
+    public long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        bufferedBytes = 0;
+        if (batchedStatements > 0) {
+            statementFor(rowsPerStatement).executeBatch();
+            logger.debug("多行插入批处理执行完成: {} 条语句, 每条 {} 行", batchedStatements, rowsPerStatement);
+            batchedStatements = 0;
+        }
+        // 不足一条完整语句的尾部数据按2的幂次拆分执行，避免每种尾部行数各缓存一条语句
+        int offset = 0;
+        while (offset < pendingRows.size()) {
+            int rowCount = Integer.highestOneBit(pendingRows.size() - offset);
+            PreparedStatement tailStmt = statementFor(rowCount);
+            bindRows(tailStmt, pendingRows.subList(offset, offset + rowCount));
+            tailStmt.executeUpdate();
+            offset += rowCount;
+        }
+        pendingRows.clear();
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        flush();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        pendingRows.clear();
+        SQLException closeFailure = null;
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                closeFailure = e;
+            }
+        }
+        statements.clear();
+        if (closeFailure != null) {
+            throw closeFailure;
+        }
+    }
+
+    private void bindRows(PreparedStatement stmt, List<Object[]> rows) throws SQLException {
+        int columnCount = columns.size();
+        for (int row = 0; row < rows.size(); row++) {
+            Object[] values = rows.get(row);
+            for (int i = 0; i < columnCount; i++) {
+                ColumnInfo column = columns.get(i);
+                try {
+                    column.converter.setParameter(stmt, row * columnCount + i + 1, values[i]);
+                } catch (SQLException e) {
+                    logger.error("转换数据时出错 - 表: {}, 列: {}, MySQL类型: {}, 高斯类型: {}, 值: {}",
+                            tableName, column.name, column.mysqlType, column.gaussType, values[i]);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private PreparedStatement statementFor(int rowCount) throws SQLException {
+        PreparedStatement stmt = statements.get(rowCount);
+        if (stmt == null) {
+            stmt = gaussConn.prepareStatement(generateInsertSql(rowCount));
+            statements.put(rowCount, stmt);
+        }
+        return stmt;
+    }
+
+    private String generateInsertSql(int rowCount) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+                row.append(", ");
+            }
+            sql.append(columns.get(i).name);
+            row.append("?");
+        }
+        row.append(")");
+        sql.append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.zp.entity.ProcessInfo;
+import org.zp.service.MigrationTaskService;
+import org.zp.service.ProgressService;
+import org.zp.service.TransferringDataService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过Server-Sent Events推送任务进度。单个线程按固定间隔为每个有订阅者的任务生成一次快照，
+ * 发给该任务的所有订阅者，同步线程不参与推送
+ *
+ * @Author zp
+ * @Date 2024/10/25 16:25
+ */
+
+@Service
+public class ProgressServiceImpl implements ProgressService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressServiceImpl.class);
+
+    /**
+     * 进度推送间隔
+     */
+    @Value("${progress.push.interval.ms:500}")
+    private Long pushIntervalMs;
+
+    private final TransferringDataService transferringDataService;
+
+    private final MigrationTaskService migrationTaskService;
+
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * 各任务上次推送时的已同步行数和时间，用于计算每秒行数
+     */
+    private final Map<String, long[]> lastPushed = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public ProgressServiceImpl(TransferringDataService transferringDataService, MigrationTaskService migrationTaskService) {
+        this.transferringDataService = transferringDataService;
+        this.migrationTaskService = migrationTaskService;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("progress-push-"));
+        scheduler.scheduleAtFixedRate(this::pushAll, pushIntervalMs, pushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    @Override
+    public SseEmitter subscribe(String taskId) {
+        // 不设超时，任务结束时由服务端关闭
+        SseEmitter emitter = new SseEmitter(0L);
+        if (!migrationTaskService.isActive(taskId) && migrationTaskService.getProgress(taskId) == null) {
+            // 未知的任务永远不会结束，直接关闭连接
+            logger.warn("订阅的任务 {} 不存在", taskId);
+            emitter.complete();
+            return emitter;
+        }
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(taskId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+        emitter.onCompletion(() -> unsubscribe(taskId, emitter));
+        emitter.onTimeout(() -> unsubscribe(taskId, emitter));
+        emitter.onError(e -> unsubscribe(taskId, emitter));
+        return emitter;
+    }
+
+    private void unsubscribe(String taskId, SseEmitter emitter) {
+        List<SseEmitter> emitters = subscribers.get(taskId);
+        if (emitters != null) {
+            emitters.remove(emitter);
+            if (emitters.isEmpty()) {
+                subscribers.remove(taskId, emitters);
+                lastPushed.remove(taskId);
+            }
+        }
+    }
+
+    private void pushAll() {
+        try {
+            for (Map.Entry<String, List<SseEmitter>> entry : subscribers.entrySet()) {
+                push(entry.getKey(), entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            // 异常会使定时任务不再执行
+            logger.error("推送进度失败", e);
+        }
+    }
+
+    private void push(String taskId, List<SseEmitter> emitters) {
+        ProcessInfo processInfo = migrationTaskService.getProgress(taskId);
+        if (processInfo == null) {
+            processInfo = new ProcessInfo(0.00, ProcessInfo.TaskStatus.INIT, ProcessInfo.TaskType.GENERATE_SQL);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("process", processInfo.getProcess());
+        snapshot.put("taskStatus", processInfo.getTaskStatus());
+        snapshot.put("taskType", processInfo.getTaskType());
+        Map<String, Object> transferSnapshot = processInfo.getTaskType() == ProcessInfo.TaskType.TRANSFER_DATA
+                ? transferringDataService.getProgressSnapshot(taskId) : Collections.emptyMap();
+        if (!transferSnapshot.isEmpty()) {
+            snapshot.putAll(transferSnapshot);
+            long processed = (Long) snapshot.get("processedRecords");
+            long now = System.nanoTime();
+            long[] last = lastPushed.put(taskId, new long[]{processed, now});
+            double rowsPerSecond = last == null || now == last[1] ? 0
+                    : Math.max(0, processed - last[0]) * 1e9 / (now - last[1]);
+            snapshot.put("rowsPerSecond", Math.round(rowsPerSecond));
+        }
+
+        // 以任务是否结束为准，单条语句失败会把状态标为FAIL，但任务仍在继续执行
+        boolean finished = !migrationTaskService.isActive(taskId);
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(snapshot));
+                if (finished) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开
+                unsubscribe(taskId, emitter);
+            }
+        }
+    }
+}
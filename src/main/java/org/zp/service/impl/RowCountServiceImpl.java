@@ -0,0 +1,143 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.zp.conf.DataSourceManager;
+import org.zp.entity.CountStrategy;
+import org.zp.entity.DataBaseInfo;
+import org.zp.service.RowCountService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @Author zp
+ * @Date 2024/10/22 14:15
+ */
+
+@Service
+public class RowCountServiceImpl implements RowCountService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowCountServiceImpl.class);
+
+    private static final String MYSQL_ESTIMATE_SQL =
+            "SELECT TABLE_NAME, TABLE_ROWS FROM information_schema.TABLES " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE'";
+
+    private static final String GAUSS_ESTIMATE_SQL =
+            "SELECT c.relname, c.reltuples FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE c.relkind = 'r' AND n.nspname = ?";
+
+    /**
+     * PARALLEL策略同时执行COUNT(*)的连接数
+     */
+    @Value("${sync.count.workers:4}")
+    private Integer countWorkers;
+
+    private final DataSourceManager dataSourceManager;
+
+    public RowCountServiceImpl(DataSourceManager dataSourceManager) {
+        this.dataSourceManager = dataSourceManager;
+    }
+
+    @Override
+    public Map<String, Long> countRows(DataBaseInfo dataBaseInfo, List<String> tables, CountStrategy strategy)
+            throws SQLException {
+        Map<String, Long> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        switch (strategy) {
+            case EXACT:
+                try (Connection conn = dataSourceManager.getConnection(dataBaseInfo)) {
+                    for (String table : tables) {
+                        counts.put(table, countTable(conn, table));
+                    }
+                }
+                break;
+            case PARALLEL:
+                counts.putAll(countInParallel(dataBaseInfo, tables));
+                break;
+            case ESTIMATED:
+                try (Connection conn = dataSourceManager.getConnection(dataBaseInfo)) {
+                    counts.putAll(estimate(conn, dataBaseInfo));
+                }
+                break;
+            default:
+                break;
+        }
+        return counts;
+    }
+
+    private Map<String, Long> countInParallel(DataBaseInfo dataBaseInfo, List<String> tables) throws SQLException {
+        Map<String, Long> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (tables.isEmpty()) {
+            return counts;
+        }
+        // 同步任务计数时仍持有一对连接，计数线程只使用该任务剩余的连接
+        int workers = Math.max(1, Math.min(Math.min(countWorkers, dataSourceManager.connectionsPerTask() - 1), tables.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("row-count-"));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (String table : tables) {
+                futures.add(executor.submit(() -> {
+                    try (Connection conn = dataSourceManager.getConnection(dataBaseInfo)) {
+                        return countTable(conn, table);
+                    }
+                }));
+            }
+            for (int i = 0; i < tables.size(); i++) {
+                counts.put(tables.get(i), futures.get(i).get());
+            }
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("并行统计行数被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException("并行统计行数失败", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long countTable(Connection conn, String tableName) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 估算值来自统计信息，InnoDB的误差可能达到数十个百分点，高斯未ANALYZE的表为0或-1
+     */
+    private Map<String, Long> estimate(Connection conn, DataBaseInfo dataBaseInfo) throws SQLException {
+        Map<String, Long> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        boolean mysql = dataBaseInfo.getUrl().startsWith("jdbc:mysql");
+        try (PreparedStatement stmt = conn.prepareStatement(mysql ? MYSQL_ESTIMATE_SQL : GAUSS_ESTIMATE_SQL)) {
+            if (!mysql) {
+                String schema = dataBaseInfo.getSchema();
+                stmt.setString(1, schema == null || schema.isEmpty() ? conn.getSchema() : schema);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // reltuples是real类型，统一按double读取
+                    counts.put(rs.getString(1), Math.max(0, (long) rs.getDouble(2)));
+                }
+            }
+        }
+        logger.debug("从统计信息估算了 {} 张表的行数", counts.size());
+        return counts;
+    }
+}
@@ -0,0 +1,42 @@
+package org.zp.service.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 高斯端的行写入器，由copyRows按批次驱动
+ *
+ * @Author zp
+ * @Date 2024/10/21 14:05
+ */
+
+interface RowWriter extends AutoCloseable {
+
+    /**
+     * 缓存一行数据，values在调用返回后会被复用，实现类不能持有该数组
+     */
+    void addRow(Object[] values) throws SQLException;
+
+    /**
+     * 直接缓存MySQL结果集的当前行，不支持直接写入的实现先转换为Object[]
+     */
+    void addRow(ResultSet rs) throws SQLException;
+
+    /**
+     * 当前缓存但尚未发送的数据的估算字节数，超过上限时copyRows提前发送本批次
+     */
+    long bufferedBytes();
+
+    /**
+     * 把缓存的行发送到高斯
+     */
+    void flush() throws SQLException;
+
+    /**
+     * 发送剩余数据并结束本次写入，之后才能提交事务。结束后仍可继续写入，用于分段提交
+     */
+    void finish() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,144 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.zp.entity.DataBaseInfo;
+import org.zp.entity.SchemaMetadata;
+import org.zp.service.SchemaCatalogService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MySQL和高斯两端共用的表结构元数据缓存。每次取用先查一次库结构指纹（MySQL为表的建表/修改时间，以及列定义、
+ * 索引、约束、外键规则、视图和检查约束的行数与CRC之和；高斯为schema下系统表行的行数与事务号，见SchemaMetadataLoader），
+ * 指纹不变直接返回缓存，变化时重新加载。
+ * 配置了目录时缓存同时写入磁盘，重启后指纹不变即可跳过加载
+ *
+ * @Author zp
+ * @Date 2024/10/30 10:45
+ */
+
+@Service
+public class SchemaCatalogServiceImpl implements SchemaCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaCatalogServiceImpl.class);
+
+    /**
+     * 关闭后每次都重新加载元数据
+     */
+    @Value("${schema.cache.enabled:true}")
+    private Boolean cacheEnabled;
+
+    /**
+     * 元数据缓存的持久化目录，为空时只缓存在内存中
+     */
+    @Value("${schema.cache.dir:}")
+    private String cacheDir;
+
+    private final Map<String, SchemaMetadata> cache = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public SchemaMetadata getMetadata(DataBaseInfo dataBaseInfo, Connection conn) throws SQLException {
+        boolean mysql = dataBaseInfo.getUrl().startsWith("jdbc:mysql");
+        String schema = null;
+        if (!mysql) {
+            schema = dataBaseInfo.getSchema();
+            if (schema == null || schema.isEmpty()) {
+                schema = conn.getSchema();
+            }
+        }
+        String fingerprint = mysql ? SchemaMetadataLoader.mysqlFingerprint(conn)
+                : SchemaMetadataLoader.gaussFingerprint(conn, schema);
+        if (!cacheEnabled) {
+            return load(conn, mysql, schema, fingerprint);
+        }
+
+        String key = dataBaseInfo.getUrl() + "|" + dataBaseInfo.getUser() + "|" + (mysql ? "" : schema);
+        // 同一个库同时只有一个线程加载，其余线程等待后直接使用结果
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            SchemaMetadata metadata = cache.get(key);
+            if (metadata == null) {
+                metadata = readFromDisk(key);
+            }
+            if (metadata != null && fingerprint.equals(metadata.getFingerprint())) {
+                cache.put(key, metadata);
+                return metadata;
+            }
+            if (metadata != null) {
+                logger.info("库结构已变化，重新加载元数据: {}", key);
+            }
+            metadata = load(conn, mysql, schema, fingerprint);
+            cache.put(key, metadata);
+            writeToDisk(key, metadata);
+            return metadata;
+        }
+    }
+
+    private SchemaMetadata load(Connection conn, boolean mysql, String schema, String fingerprint) throws SQLException {
+        return mysql ? SchemaMetadataLoader.loadMysql(conn, fingerprint)
+                : SchemaMetadataLoader.loadGauss(conn, schema, fingerprint);
+    }
+
+    private File cacheFile(String key) {
+        return new File(cacheDir, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".schema");
+    }
+
+    /**
+     * 读取失败（文件损坏或类结构变化）时当作没有缓存
+     */
+    private SchemaMetadata readFromDisk(String key) {
+        if (cacheDir == null || cacheDir.isEmpty()) {
+            return null;
+        }
+        File file = cacheFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (SchemaMetadata) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("读取元数据缓存文件失败，将重新加载: {}", file, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, SchemaMetadata metadata) {
+        if (cacheDir == null || cacheDir.isEmpty()) {
+            return;
+        }
+        File file = cacheFile(key);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("无法创建目录 " + directory);
+            }
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeObject(metadata);
+            }
+            // 先写临时文件再替换，进程中途退出不会留下不完整的缓存
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("无法替换缓存文件 " + file);
+            }
+        } catch (IOException e) {
+            logger.warn("写入元数据缓存文件失败: {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zp.entity.ForeignKeyInfo;
+import org.zp.entity.IndexInfo;
+import org.zp.entity.SchemaMetadata;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * 用几条按库查询的系统表语句一次取回所有表的元数据，MySQL查information_schema，高斯查pg_catalog，
+ * 不再逐表调用DatabaseMetaData
+ *
+ * @Author zp
+ * @Date 2024/10/29 14:30
+ */
+
+class SchemaMetadataLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMetadataLoader.class);
+
+    private static final String MYSQL_TABLES_SQL =
+            "SELECT TABLE_NAME, TABLE_COMMENT FROM information_schema.TABLES " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME";
+
+    private static final String MYSQL_COLUMNS_SQL =
+            "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, COLUMN_TYPE, CHARACTER_MAXIMUM_LENGTH, NUMERIC_PRECISION, " +
+                    "IS_NULLABLE, COLUMN_DEFAULT, EXTRA, COLUMN_COMMENT FROM information_schema.COLUMNS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() ORDER BY TABLE_NAME, ORDINAL_POSITION";
+
+    private static final String MYSQL_INDEXES_SQL =
+            "SELECT TABLE_NAME, INDEX_NAME, NON_UNIQUE, COLUMN_NAME FROM information_schema.STATISTICS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+
+    private static final String MYSQL_FOREIGN_KEYS_SQL =
+            "SELECT k.TABLE_NAME, k.CONSTRAINT_NAME, k.COLUMN_NAME, k.REFERENCED_TABLE_NAME, k.REFERENCED_COLUMN_NAME, " +
+                    "r.UPDATE_RULE, r.DELETE_RULE FROM information_schema.KEY_COLUMN_USAGE k " +
+                    "JOIN information_schema.REFERENTIAL_CONSTRAINTS r ON r.CONSTRAINT_SCHEMA = k.CONSTRAINT_SCHEMA " +
+                    "AND r.CONSTRAINT_NAME = k.CONSTRAINT_NAME AND r.TABLE_NAME = k.TABLE_NAME " +
+                    "WHERE k.TABLE_SCHEMA = DATABASE() AND k.REFERENCED_TABLE_NAME IS NOT NULL " +
+                    "ORDER BY k.TABLE_NAME, k.CONSTRAINT_NAME, k.ORDINAL_POSITION";
+
+    /**
+     * CHECK_CONSTRAINTS从MySQL 8.0.16开始才有，之前的版本解析但不保存检查约束
+     */
+    private static final String MYSQL_CHECKS_SQL =
+            "SELECT t.TABLE_NAME, c.CONSTRAINT_NAME, c.CHECK_CLAUSE FROM information_schema.TABLE_CONSTRAINTS t " +
+                    "JOIN information_schema.CHECK_CONSTRAINTS c ON c.CONSTRAINT_SCHEMA = t.CONSTRAINT_SCHEMA " +
+                    "AND c.CONSTRAINT_NAME = t.CONSTRAINT_NAME " +
+                    "WHERE t.TABLE_SCHEMA = DATABASE() AND t.CONSTRAINT_TYPE = 'CHECK' " +
+                    "ORDER BY t.TABLE_NAME, c.CONSTRAINT_NAME";
+
+    private static final String MYSQL_VIEWS_SQL =
+            "SELECT TABLE_NAME, VIEW_DEFINITION FROM information_schema.VIEWS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() ORDER BY TABLE_NAME";
+
+    /**
+     * 表的建表/修改时间，以及列定义、索引、约束、外键规则和视图定义的行数与CRC之和，任何一项变化都重新加载。
+     * 视图的时间为NULL，只能靠视图定义发现变化。MySQL 8的information_schema.TABLES有统计缓存，
+     * 时间最多滞后information_schema_stats_expiry秒，但结构变化同时体现在其他几项中
+     */
+    private static final String MYSQL_FINGERPRINT_SQL =
+            "SELECT COUNT(*), MAX(CREATE_TIME), MAX(UPDATE_TIME), " +
+                    "SUM(CRC32(CONCAT_WS(':', TABLE_NAME, TABLE_TYPE, CREATE_TIME, UPDATE_TIME, TABLE_COMMENT))), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, " +
+                    "COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT IS NULL, COLUMN_DEFAULT, EXTRA, COLUMN_COMMENT)))) " +
+                    "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE()), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, " +
+                    "COLUMN_NAME, NON_UNIQUE)))) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE()), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, CONSTRAINT_NAME, CONSTRAINT_TYPE)))) " +
+                    "FROM information_schema.TABLE_CONSTRAINTS WHERE TABLE_SCHEMA = DATABASE()), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME, " +
+                    "ORDINAL_POSITION, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME)))) " +
+                    "FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE()), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, CONSTRAINT_NAME, UPDATE_RULE, " +
+                    "DELETE_RULE)))) FROM information_schema.REFERENTIAL_CONSTRAINTS WHERE CONSTRAINT_SCHEMA = DATABASE()), " +
+                    "(SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', TABLE_NAME, VIEW_DEFINITION)))) " +
+                    "FROM information_schema.VIEWS WHERE TABLE_SCHEMA = DATABASE()) " +
+                    "FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE()";
+
+    /**
+     * 检查约束的表达式，MySQL 8.0.16之前没有该表，指纹中不包含这一项
+     */
+    private static final String MYSQL_CHECKS_FINGERPRINT_SQL =
+            "SELECT CONCAT_WS(':', COUNT(*), SUM(CRC32(CONCAT_WS(':', CONSTRAINT_NAME, CHECK_CLAUSE)))) " +
+                    "FROM information_schema.CHECK_CONSTRAINTS WHERE CONSTRAINT_SCHEMA = DATABASE()";
+
+    private static final String GAUSS_TABLES_SQL =
+            "SELECT c.relname, obj_description(c.oid, 'pg_class') FROM pg_class c " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE c.relkind = 'r' AND n.nspname = ? ORDER BY c.relname";
+
+    private static final String GAUSS_COLUMNS_SQL =
+            "SELECT c.relname, a.attname, t.typname, " +
+                    "CASE WHEN t.typname IN ('varchar', 'bpchar') AND a.atttypmod > 4 THEN a.atttypmod - 4 " +
+                    "WHEN t.typname = 'numeric' AND a.atttypmod > 4 THEN ((a.atttypmod - 4) >> 16) & 65535 ELSE 0 END, " +
+                    "NOT a.attnotnull, pg_get_expr(d.adbin, d.adrelid), col_description(c.oid, a.attnum) " +
+                    "FROM pg_attribute a JOIN pg_class c ON c.oid = a.attrelid " +
+                    "JOIN pg_namespace n ON n.oid = c.relnamespace JOIN pg_type t ON t.oid = a.atttypid " +
+                    "LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum " +
+                    "WHERE c.relkind = 'r' AND n.nspname = ? AND a.attnum > 0 AND NOT a.attisdropped " +
+                    "ORDER BY c.relname, a.attnum";
+
+    private static final String GAUSS_INDEXES_SQL =
+            "SELECT t.relname, i.relname, x.indisunique, x.indisprimary, a.attname FROM pg_index x " +
+                    "JOIN pg_class t ON t.oid = x.indrelid JOIN pg_class i ON i.oid = x.indexrelid " +
+                    "JOIN pg_namespace n ON n.oid = t.relnamespace " +
+                    "CROSS JOIN generate_series(0, x.indnatts - 1) k " +
+                    "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = x.indkey[k] " +
+                    "WHERE n.nspname = ? ORDER BY t.relname, i.relname, k";
+
+    private static final String GAUSS_FOREIGN_KEYS_SQL =
+            "SELECT t.relname, o.conname, a.attname, rt.relname, ra.attname, o.confupdtype, o.confdeltype " +
+                    "FROM pg_constraint o JOIN pg_class t ON t.oid = o.conrelid " +
+                    "JOIN pg_class rt ON rt.oid = o.confrelid JOIN pg_namespace n ON n.oid = o.connamespace " +
+                    "CROSS JOIN generate_series(1, array_length(o.conkey, 1)) k " +
+                    "JOIN pg_attribute a ON a.attrelid = o.conrelid AND a.attnum = o.conkey[k] " +
+                    "JOIN pg_attribute ra ON ra.attrelid = o.confrelid AND ra.attnum = o.confkey[k] " +
+                    "WHERE o.contype = 'f' AND n.nspname = ? ORDER BY t.relname, o.conname, k";
+
+    private static final String GAUSS_CHECKS_SQL =
+            "SELECT t.relname, o.conname, pg_get_constraintdef(o.oid) FROM pg_constraint o " +
+                    "JOIN pg_class t ON t.oid = o.conrelid JOIN pg_namespace n ON n.oid = o.connamespace " +
+                    "WHERE o.contype = 'c' AND n.nspname = ? ORDER BY t.relname, o.conname";
+
+    private static final String GAUSS_VIEWS_SQL =
+            "SELECT viewname, definition FROM pg_views WHERE schemaname = ? ORDER BY viewname";
+
+    /**
+     * schema下关系、列和约束的行数与最大事务号，DDL会改写这些系统表的行。ANALYZE也会更新pg_class，
+     * 此时多加载一次
+     */
+    private static final String GAUSS_FINGERPRINT_SQL =
+            "SELECT (SELECT count(*) || ':' || coalesce(max(c.xmin::text::bigint), 0) FROM pg_class c " +
+                    "WHERE c.relnamespace = n.oid), " +
+                    "(SELECT count(*) || ':' || coalesce(max(a.xmin::text::bigint), 0) FROM pg_attribute a " +
+                    "JOIN pg_class c ON c.oid = a.attrelid WHERE c.relnamespace = n.oid), " +
+                    "(SELECT count(*) || ':' || coalesce(max(o.xmin::text::bigint), 0) FROM pg_constraint o " +
+                    "WHERE o.connamespace = n.oid) " +
+                    "FROM pg_namespace n WHERE n.nspname = ?";
+
+    private SchemaMetadataLoader() {
+    }
+
+    static String mysqlFingerprint(Connection mysqlConn) throws SQLException {
+        String fingerprint;
+        try (Statement stmt = mysqlConn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(MYSQL_FINGERPRINT_SQL)) {
+                fingerprint = rs.next() ? joinRow(rs) : "";
+            }
+            try (ResultSet rs = stmt.executeQuery(MYSQL_CHECKS_FINGERPRINT_SQL)) {
+                if (rs.next()) {
+                    fingerprint += "/" + joinRow(rs);
+                }
+            } catch (SQLException e) {
+                logger.debug("MySQL不支持information_schema.CHECK_CONSTRAINTS，指纹不包含检查约束: {}", e.getMessage());
+            }
+        }
+        return fingerprint;
+    }
+
+    static String gaussFingerprint(Connection gaussConn, String schema) throws SQLException {
+        try (PreparedStatement stmt = gaussConn.prepareStatement(GAUSS_FINGERPRINT_SQL)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? joinRow(rs) : "";
+            }
+        }
+    }
+
+    private static String joinRow(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        StringBuilder fingerprint = new StringBuilder();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            fingerprint.append(i > 1 ? "/" : "").append(rs.getString(i));
+        }
+        return fingerprint.toString();
+    }
+
+    static SchemaMetadata loadMysql(Connection mysqlConn, String fingerprint) throws SQLException {
+        long start = System.currentTimeMillis();
+        SchemaMetadata metadata = new SchemaMetadata(fingerprint);
+        try (Statement stmt = mysqlConn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(MYSQL_TABLES_SQL)) {
+                while (rs.next()) {
+                    metadata.addTable(new SchemaMetadata.Table(rs.getString(1), rs.getString(2)));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(MYSQL_COLUMNS_SQL)) {
+                while (rs.next()) {
+                    SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                    if (table == null) {
+                        continue;
+                    }
+                    String dataType = rs.getString(3).toUpperCase();
+                    String columnType = rs.getString(4).toLowerCase();
+                    long charLength = rs.getLong(5);
+                    long size = rs.wasNull() ? rs.getLong(6) : charLength;
+                    String extra = rs.getString(9);
+                    table.getColumns().add(new SchemaMetadata.Column(rs.getString(2), typeName(dataType, columnType),
+                            (int) Math.min(Integer.MAX_VALUE, size), "YES".equals(rs.getString(7)),
+                            extra != null && extra.toLowerCase().contains("auto_increment"),
+                            rs.getString(8), rs.getString(10)));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(MYSQL_INDEXES_SQL)) {
+                while (rs.next()) {
+                    SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                    if (table == null) {
+                        continue;
+                    }
+                    String indexName = rs.getString(2);
+                    String columnName = rs.getString(4);
+                    if ("PRIMARY".equals(indexName)) {
+                        table.setPrimaryKeyName(indexName);
+                        table.getPrimaryKey().add(columnName);
+                    } else {
+                        table.getIndexes().computeIfAbsent(indexName, k -> new ArrayList<>())
+                                .add(new IndexInfo(columnName, rs.getInt(3) == 0));
+                    }
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(MYSQL_FOREIGN_KEYS_SQL)) {
+                while (rs.next()) {
+                    SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                    if (table == null) {
+                        continue;
+                    }
+                    table.getForeignKeys().computeIfAbsent(rs.getString(2), k -> new ArrayList<>())
+                            .add(new ForeignKeyInfo(rs.getString(3), rs.getString(4), rs.getString(5),
+                                    ruleCode(rs.getString(6)), ruleCode(rs.getString(7))));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(MYSQL_CHECKS_SQL)) {
+                while (rs.next()) {
+                    SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                    if (table != null) {
+                        table.getChecks().put(rs.getString(2), rs.getString(3));
+                    }
+                }
+            } catch (SQLException e) {
+                logger.info("MySQL不支持information_schema.CHECK_CONSTRAINTS，不生成检查约束: {}", e.getMessage());
+            }
+
+            try (ResultSet rs = stmt.executeQuery(MYSQL_VIEWS_SQL)) {
+                while (rs.next()) {
+                    metadata.getViews().put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+        logger.info("读取MySQL表结构元数据完成，表: {}，视图: {}，耗时: {} ms", metadata.getTables().size(),
+                metadata.getViews().size(), System.currentTimeMillis() - start);
+        return metadata;
+    }
+
+    static SchemaMetadata loadGauss(Connection gaussConn, String schema, String fingerprint) throws SQLException {
+        long start = System.currentTimeMillis();
+        SchemaMetadata metadata = new SchemaMetadata(fingerprint);
+        try (ResultSet rs = query(gaussConn, GAUSS_TABLES_SQL, schema)) {
+            while (rs.next()) {
+                metadata.addTable(new SchemaMetadata.Table(rs.getString(1), rs.getString(2)));
+            }
+        }
+
+        try (ResultSet rs = query(gaussConn, GAUSS_COLUMNS_SQL, schema)) {
+            while (rs.next()) {
+                SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                if (table != null) {
+                    String defaultValue = rs.getString(6);
+                    table.getColumns().add(new SchemaMetadata.Column(rs.getString(2), rs.getString(3).toUpperCase(),
+                            rs.getInt(4), rs.getBoolean(5),
+                            defaultValue != null && defaultValue.startsWith("nextval("), defaultValue, rs.getString(7)));
+                }
+            }
+        }
+
+        try (ResultSet rs = query(gaussConn, GAUSS_INDEXES_SQL, schema)) {
+            while (rs.next()) {
+                SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                if (table == null) {
+                    continue;
+                }
+                String indexName = rs.getString(2);
+                String columnName = rs.getString(5);
+                if (rs.getBoolean(4)) {
+                    table.setPrimaryKeyName(indexName);
+                    table.getPrimaryKey().add(columnName);
+                } else {
+                    table.getIndexes().computeIfAbsent(indexName, k -> new ArrayList<>())
+                            .add(new IndexInfo(columnName, rs.getBoolean(3)));
+                }
+            }
+        }
+
+        try (ResultSet rs = query(gaussConn, GAUSS_FOREIGN_KEYS_SQL, schema)) {
+            while (rs.next()) {
+                SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                if (table != null) {
+                    table.getForeignKeys().computeIfAbsent(rs.getString(2), k -> new ArrayList<>())
+                            .add(new ForeignKeyInfo(rs.getString(3), rs.getString(4), rs.getString(5),
+                                    gaussRuleCode(rs.getString(6)), gaussRuleCode(rs.getString(7))));
+                }
+            }
+        }
+
+        try (ResultSet rs = query(gaussConn, GAUSS_CHECKS_SQL, schema)) {
+            while (rs.next()) {
+                SchemaMetadata.Table table = metadata.getTable(rs.getString(1));
+                if (table != null) {
+                    // pg_get_constraintdef返回CHECK (...)，只保留表达式，与MySQL的CHECK_CLAUSE一致
+                    table.getChecks().put(rs.getString(2), rs.getString(3).replaceFirst("^CHECK\\s*", ""));
+                }
+            }
+        }
+
+        try (ResultSet rs = query(gaussConn, GAUSS_VIEWS_SQL, schema)) {
+            while (rs.next()) {
+                metadata.getViews().put(rs.getString(1), rs.getString(2));
+            }
+        }
+        logger.info("读取高斯表结构元数据完成，schema: {}，表: {}，视图: {}，耗时: {} ms", schema,
+                metadata.getTables().size(), metadata.getViews().size(), System.currentTimeMillis() - start);
+        return metadata;
+    }
+
+    /**
+     * 返回的结果集关闭时一并关闭语句
+     */
+    private static ResultSet query(Connection conn, String sql, String schema) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setString(1, schema);
+        stmt.closeOnCompletion();
+        return stmt.executeQuery();
+    }
+
+    /**
+     * 按驱动getColumns的规则还原TYPE_NAME，使DDL中的类型映射与数据同步时的类型转换一致
+     */
+    static String typeName(String dataType, String columnType) {
+        if (columnType.startsWith("tinyint(1)")) {
+            return "BIT";
+        }
+        return columnType.contains("unsigned") ? dataType + " UNSIGNED" : dataType;
+    }
+
+    /**
+     * REFERENTIAL_CONSTRAINTS中的规则名转换为DatabaseMetaData中的常量
+     */
+    static short ruleCode(String rule) {
+        switch (rule == null ? "" : rule.toUpperCase()) {
+            case "CASCADE":
+                return DatabaseMetaData.importedKeyCascade;
+            case "SET NULL":
+                return DatabaseMetaData.importedKeySetNull;
+            case "SET DEFAULT":
+                return DatabaseMetaData.importedKeySetDefault;
+            case "NO ACTION":
+                return DatabaseMetaData.importedKeyNoAction;
+            default:
+                return DatabaseMetaData.importedKeyRestrict;
+        }
+    }
+
+    /**
+     * pg_constraint中confupdtype/confdeltype的单字符代码转换为DatabaseMetaData中的常量
+     */
+    static short gaussRuleCode(String rule) {
+        switch (rule == null ? "" : rule) {
+            case "c":
+                return DatabaseMetaData.importedKeyCascade;
+            case "n":
+                return DatabaseMetaData.importedKeySetNull;
+            case "d":
+                return DatabaseMetaData.importedKeySetDefault;
+            case "r":
+                return DatabaseMetaData.importedKeyRestrict;
+            default:
+                return DatabaseMetaData.importedKeyNoAction;
+        }
+    }
+}
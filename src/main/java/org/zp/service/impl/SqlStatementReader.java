@@ -0,0 +1,209 @@
+package org.zp.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 从SQL脚本中逐条读取语句，只在引号、注释和美元引用之外的分号处切分，读取过程中只保留当前语句，
+ * 内存占用与脚本大小无关。返回的语句保留原有换行，不含结尾的分号和注释
+ *
+ * @Author zp
+ * @Date 2024/10/31 09:50
+ */
+
+class SqlStatementReader implements Closeable {
+
+    private static final int NORMAL = 0;
+    private static final int SINGLE_QUOTE = 1;
+    private static final int DOUBLE_QUOTE = 2;
+    private static final int DOLLAR_QUOTE = 3;
+    private static final int LINE_COMMENT = 4;
+    private static final int BLOCK_COMMENT = 5;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int line = 1;
+    private int statementLine;
+
+    SqlStatementReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 上一条返回的语句在脚本中的起始行号，从1开始
+     */
+    int getStatementLine() {
+        return statementLine;
+    }
+
+    /**
+     * 下一条非空语句，脚本结束时返回null。最后一条语句可以没有分号
+     */
+    String next() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        int state = NORMAL;
+        int commentDepth = 0;
+        // 可能是美元引用开始标记的$所在位置，-1表示不在标记中
+        int dollarStart = -1;
+        String dollarTag = null;
+        int dollarBodyStart = 0;
+        int c;
+        while ((c = read()) != -1) {
+            char ch = (char) c;
+            switch (state) {
+                case LINE_COMMENT:
+                    if (ch == '\n') {
+                        state = NORMAL;
+                        if (sql.length() > 0) {
+                            sql.append('\n');
+                        }
+                    }
+                    continue;
+                case BLOCK_COMMENT:
+                    if (ch == '*' && peek() == '/') {
+                        read();
+                        if (--commentDepth == 0) {
+                            state = NORMAL;
+                            if (sql.length() > 0) {
+                                sql.append(' ');
+                            }
+                        }
+                    } else if (ch == '/' && peek() == '*') {
+                        read();
+                        commentDepth++;
+                    }
+                    continue;
+                case SINGLE_QUOTE:
+                case DOUBLE_QUOTE:
+                    sql.append(ch);
+                    char quote = state == SINGLE_QUOTE ? '\'' : '"';
+                    if (ch == quote) {
+                        // 连续两个引号是转义
+                        if (peek() == quote) {
+                            sql.append((char) read());
+                        } else {
+                            state = NORMAL;
+                        }
+                    }
+                    continue;
+                case DOLLAR_QUOTE:
+                    sql.append(ch);
+                    if (ch == '$' && sql.length() - dollarTag.length() >= dollarBodyStart && endsWith(sql, dollarTag)) {
+                        state = NORMAL;
+                    }
+                    continue;
+                default:
+                    break;
+            }
+
+            if (dollarStart >= 0) {
+                if (Character.isLetterOrDigit(ch) || ch == '_') {
+                    sql.append(ch);
+                    continue;
+                }
+                if (ch == '$') {
+                    sql.append(ch);
+                    dollarTag = sql.substring(dollarStart);
+                    dollarBodyStart = sql.length();
+                    dollarStart = -1;
+                    state = DOLLAR_QUOTE;
+                    continue;
+                }
+                dollarStart = -1;
+            }
+
+            if (ch == '-' && peek() == '-') {
+                read();
+                state = LINE_COMMENT;
+                continue;
+            }
+            if (ch == '/' && peek() == '*') {
+                read();
+                state = BLOCK_COMMENT;
+                commentDepth = 1;
+                continue;
+            }
+            if (ch == ';') {
+                String statement = sql.toString().trim();
+                if (!statement.isEmpty()) {
+                    return statement;
+                }
+                sql.setLength(0);
+                continue;
+            }
+            if (sql.length() == 0) {
+                if (Character.isWhitespace(ch)) {
+                    continue;
+                }
+                statementLine = line;
+            }
+            if (ch == '\'') {
+                state = SINGLE_QUOTE;
+            } else if (ch == '"') {
+                state = DOUBLE_QUOTE;
+            } else if (ch == '$' && !endsWithIdentifier(sql)) {
+                dollarStart = sql.length();
+            }
+            sql.append(ch);
+        }
+        String statement = sql.toString().trim();
+        return statement.isEmpty() ? null : statement;
+    }
+
+    private static boolean endsWith(StringBuilder sql, String suffix) {
+        int offset = sql.length() - suffix.length();
+        for (int i = 0; i < suffix.length(); i++) {
+            if (sql.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder sql) {
+        if (sql.length() == 0) {
+            return false;
+        }
+        char last = sql.charAt(sql.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        char ch = buffer[position++];
+        if (ch == '\n') {
+            line++;
+        }
+        return ch;
+    }
+
+    private int peek() throws IOException {
+        return fill() ? buffer[position] : -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,103 @@
+package org.zp.service.impl;
+
+import org.zp.entity.SchemaMetadata;
+import org.zp.entity.TaskControl;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一次同步任务的运行状态：进度计数、失败的表、批大小调整、死信文件和检查点/高水位存储。
+ * 每个任务创建一个实例，同步服务本身只保留配置，多个任务可以同时运行而互不影响
+ *
+ * @Author zp
+ * @Date 2024/10/28 15:40
+ */
+
+class SyncContext {
+
+    final String taskId;
+    final TaskControl control;
+    final boolean incremental;
+    final LocalDateTime startTime = LocalDateTime.now();
+
+    final SyncProgress progress = new SyncProgress();
+    final Set<String> errorTables = ConcurrentHashMap.newKeySet();
+    final Map<String, BatchTuner> batchTuners = new ConcurrentHashMap<>();
+    final Map<String, DeadLetterFile> deadLetterFiles = new ConcurrentHashMap<>();
+
+    /**
+     * 调度时各表的预计数据量，表完成后据此记录吞吐量
+     */
+    final Map<String, Long> estimatedBytes = new ConcurrentHashMap<>();
+    volatile double expectedMakespanSeconds = -1;
+
+    // 以下在开始同步表之前设置，之后只读
+    SchemaMetadata mysqlSchema;
+    SchemaMetadata gaussSchema;
+    WriteConcurrencyLimiter writeLimiter;
+    CheckpointStore checkpointStore;
+    WatermarkStore watermarkStore;
+
+    /**
+     * 按每个任务可用的连接数调整后的表线程数、分片线程数和流水线写入线程数
+     */
+    int workers;
+    int chunkWorkers;
+    int pipelineWriters;
+
+    SyncContext(String taskId, TaskControl control, boolean incremental) {
+        this.taskId = taskId;
+        this.control = control;
+        this.incremental = incremental;
+    }
+
+    /**
+     * 单表进度，已处理行数由多个分片线程累加
+     */
+    static class TableProgress {
+        volatile long total;
+        final LongAdder processed = new LongAdder();
+        volatile boolean finished;
+    }
+
+    /**
+     * 同步进度，计数器均为无锁实现，写入线程按批次累加，进度推送线程随时读取
+     */
+    static class SyncProgress {
+        final LongAdder totalRecords = new LongAdder();
+        final LongAdder processedRecords = new LongAdder();
+        final Map<String, TableProgress> tables = new ConcurrentHashMap<>();
+        volatile int totalTables = 0;
+        final AtomicInteger processedTables = new AtomicInteger();
+
+        TableProgress table(String tableName) {
+            return tables.computeIfAbsent(tableName, t -> new TableProgress());
+        }
+
+        long tableRecords(String tableName) {
+            TableProgress table = tables.get(tableName);
+            return table == null ? 0 : table.total;
+        }
+
+        long tableProcessed(String tableName) {
+            TableProgress table = tables.get(tableName);
+            return table == null ? 0 : table.processed.sum();
+        }
+
+        /**
+         * 表同步完成后用实际行数替换估算值，使后续的总进度和预估时间更准确。每张表只由一个线程完成
+         */
+        void correctTableRecords(String tableName, long actual) {
+            TableProgress table = table(tableName);
+            long estimated = table.total;
+            table.total = actual;
+            table.finished = true;
+            totalRecords.add(actual - estimated);
+        }
+    }
+}
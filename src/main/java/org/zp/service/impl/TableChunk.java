@@ -0,0 +1,38 @@
+package org.zp.service.impl;
+
+/**
+ * 表的一个复制分片，keyColumn不为空时表示整型主键上的闭区间[start, end]，为空时表示整张表。
+ * 启用检查点时同时记录该分片已提交的进度
+ *
+ * @Author zp
+ * @Date 2024/10/22 16:40
+ */
+
+class TableChunk {
+
+    final String tableName;
+    final String keyColumn;
+    final long start;
+    final long end;
+
+    /**
+     * 最后一条已提交记录的主键值，为空表示该分片尚未提交过数据
+     */
+    Long lastKey;
+    long rowCount;
+    boolean finished;
+
+    TableChunk(String tableName, String keyColumn, long start, long end) {
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 本次复制的起始主键（包含）
+     */
+    long resumeFrom() {
+        return lastKey == null ? start : lastKey + 1;
+    }
+}
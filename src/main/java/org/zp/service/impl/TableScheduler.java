@@ -0,0 +1,132 @@
+package org.zp.service.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按表大小安排同步顺序：预计耗时长的表先开始（LPT），工作线程从队列中依次取表时，大表不会落到最后拖长整体耗时。
+ * 耗时按information_schema中的数据和索引大小估算，有之前同步的吞吐量记录时按各表实际吞吐量估算
+ *
+ * @Author zp
+ * @Date 2024/10/29 10:15
+ */
+
+class TableScheduler {
+
+    private static final String TABLE_SIZE_SQL =
+            "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH FROM information_schema.TABLES " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE'";
+
+    /**
+     * 每行的固定开销折算成的字节数，窄表的耗时主要花在逐行读取、转换和绑定参数上
+     */
+    static final long ROW_OVERHEAD_BYTES = 64;
+
+    private static final double SMOOTHING = 0.5;
+
+    private final long defaultBytesPerSecond;
+
+    /**
+     * 各表单线程的吞吐量（字节/秒），表名小写
+     */
+    private final Map<String, Double> throughputHistory = new ConcurrentHashMap<>();
+
+    TableScheduler(long defaultBytesPerSecond) {
+        this.defaultBytesPerSecond = Math.max(1, defaultBytesPerSecond);
+    }
+
+    static class TableSize {
+        final long rows;
+        final long dataLength;
+        final long indexLength;
+
+        TableSize(long rows, long dataLength, long indexLength) {
+            this.rows = rows;
+            this.dataLength = dataLength;
+            this.indexLength = indexLength;
+        }
+
+        /**
+         * 按统计信息中的平均行长折算rows行的数据量，主键索引在建表时创建，复制时同步维护，一并计入
+         */
+        long estimateBytes(long rows) {
+            double avgRowLength = this.rows > 0 ? (double) (dataLength + indexLength) / this.rows : 0;
+            return (long) (rows * (avgRowLength + ROW_OVERHEAD_BYTES));
+        }
+    }
+
+    static Map<String, TableSize> loadSizes(Connection mysqlConn) throws SQLException {
+        Map<String, TableSize> sizes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (PreparedStatement stmt = mysqlConn.prepareStatement(TABLE_SIZE_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                sizes.put(rs.getString(1), new TableSize(rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * @param parallelism 该表同时复制的线程数，按主键分片的大表大于1
+     * @return 预计耗时（秒）
+     */
+    double estimateSeconds(String tableName, long bytes, int parallelism) {
+        Double throughput = throughputHistory.get(tableName.toLowerCase());
+        return bytes / (throughput != null ? throughput : averageThroughput()) / Math.max(1, parallelism);
+    }
+
+    /**
+     * 记录一张表实际的单线程吞吐量，下次同步时用于估算
+     */
+    void recordThroughput(String tableName, long bytes, int parallelism, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+        double throughput = bytes * 1e9 / elapsedNanos / Math.max(1, parallelism);
+        throughputHistory.merge(tableName.toLowerCase(), throughput,
+                (old, current) -> old + SMOOTHING * (current - old));
+    }
+
+    /**
+     * 没有记录的表按已记录各表的平均吞吐量估算，都没有时使用默认值
+     */
+    double averageThroughput() {
+        return throughputHistory.values().stream().mapToDouble(Double::doubleValue).average()
+                .orElse(defaultBytesPerSecond);
+    }
+
+    /**
+     * 按预计耗时从大到小排序
+     */
+    static List<String> order(Map<String, Double> estimates) {
+        List<String> tables = new ArrayList<>(estimates.keySet());
+        tables.sort((a, b) -> Double.compare(estimates.get(b), estimates.get(a)));
+        return tables;
+    }
+
+    /**
+     * 按给定顺序把每张表分给当前最早空闲的工作线程，返回最晚结束的时间，即预计总耗时
+     */
+    static double makespan(Collection<Double> orderedSeconds, int workers) {
+        PriorityQueue<Double> finishTimes = new PriorityQueue<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            finishTimes.add(0.0);
+        }
+        double makespan = 0;
+        for (double seconds : orderedSeconds) {
+            double finish = finishTimes.poll() + seconds;
+            finishTimes.add(finish);
+            makespan = Math.max(makespan, finish);
+        }
+        return makespan;
+    }
+}
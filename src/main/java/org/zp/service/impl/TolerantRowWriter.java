@@ -0,0 +1,125 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 容错写入：缓存一个批次的行，在保存点内交给实际的写入器发送。失败时回滚到保存点并把批次对半拆分重试，
+ * 直到定位出单独失败的行写入死信文件，其余行正常提交。连接类错误不拆分，直接抛出
+ *
+ * @Author zp
+ * @Date 2024/10/25 10:30
+ */
+
+class TolerantRowWriter implements RowWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TolerantRowWriter.class);
+
+    /**
+     * 创建实际的写入器，每次尝试都使用新的写入器，失败的写入器状态不再复用
+     */
+    interface Factory {
+        RowWriter create() throws SQLException;
+    }
+
+    private final Connection gaussConn;
+    private final String tableName;
+    private final List<ColumnInfo> columns;
+    private final Factory factory;
+    private final DeadLetterFile deadLetters;
+    private final List<Object[]> pendingRows = new ArrayList<>();
+    private long bufferedBytes;
+
+    TolerantRowWriter(Connection gaussConn, String tableName, List<ColumnInfo> columns, Factory factory,
+                      DeadLetterFile deadLetters) {
+        this.gaussConn = gaussConn;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.factory = factory;
+        this.deadLetters = deadLetters;
+    }
+
+    @Override
+    public void addRow(Object[] values) {
+        Object[] row = values.clone();
+        pendingRows.add(row);
+        bufferedBytes += ColumnInfo.sizeOf(row);
+    }
+
+    @Override
+    public void addRow(ResultSet rs) throws SQLException {
+        Object[] row = ColumnInfo.readRow(rs, columns, new Object[columns.size()]);
+        pendingRows.add(row);
+        bufferedBytes += ColumnInfo.sizeOf(row);
+    }
+
+    @Override
+    public long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(pendingRows);
+        pendingRows.clear();
+        bufferedBytes = 0;
+        write(rows);
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        flush();
+    }
+
+    @Override
+    public void close() {
+        pendingRows.clear();
+    }
+
+    private void write(List<Object[]> rows) throws SQLException {
+        Savepoint savepoint = gaussConn.setSavepoint();
+        try {
+            try (RowWriter writer = factory.create()) {
+                for (Object[] row : rows) {
+                    writer.addRow(row);
+                }
+                writer.finish();
+            }
+            gaussConn.releaseSavepoint(savepoint);
+        } catch (SQLException | RuntimeException e) {
+            if (!isRowError(e)) {
+                throw e;
+            }
+            gaussConn.rollback(savepoint);
+            if (rows.size() == 1) {
+                deadLetters.write(columns, rows.get(0), e);
+                logger.warn("表 {} 的一行数据写入失败，已记录到死信文件 {}: {}", tableName, deadLetters.getFile(), e.getMessage());
+                return;
+            }
+            int half = rows.size() / 2;
+            write(rows.subList(0, half));
+            write(rows.subList(half, rows.size()));
+        }
+    }
+
+    /**
+     * 连接异常(08)、资源不足(53)、人为中断(57)与具体的行无关，拆分重试没有意义
+     */
+    private boolean isRowError(Exception e) throws SQLException {
+        if (gaussConn.isClosed()) {
+            return false;
+        }
+        String state = DeadLetterFile.sqlState(e);
+        return state == null || !(state.startsWith("08") || state.startsWith("53") || state.startsWith("57"));
+    }
+}
@@ -3,17 +3,35 @@ package org.zp.service.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.zp.conf.DataSourceManager;
+import org.zp.conf.MigrationMetrics;
+import org.zp.entity.CopyFormat;
+import org.zp.entity.CountStrategy;
 import org.zp.entity.DataBaseInfo;
 import org.zp.entity.DataTypeMappings;
+import org.zp.entity.LoaderType;
 import org.zp.entity.ProcessInfo;
+import org.zp.entity.ReadMode;
+import org.zp.entity.SchemaMetadata;
+import org.zp.entity.TaskControl;
+import org.zp.service.BinlogSyncService;
+import org.zp.service.MigrationTaskService;
+import org.zp.service.RowCountService;
+import org.zp.service.SchemaCatalogService;
 import org.zp.service.TransferringDataService;
 
-import java.math.BigDecimal;
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @Author zp
@@ -24,92 +42,507 @@ public class TransferringDataServiceImpl implements TransferringDataService {
 
     private static final Logger logger = LoggerFactory.getLogger(TransferringDataServiceImpl.class);
 
-    private Set<String> errorTables = new HashSet<>();
-
-    private static final Map<String, TypeConverter> TYPE_CONVERTERS = new HashMap<>();
-
-    private SyncProgress progress = new SyncProgress();
+    private static final Set<String> INTEGER_KEY_TYPES = new HashSet<>(Arrays.asList(
+            "TINYINT", "SMALLINT", "MEDIUMINT", "INT", "INTEGER", "BIGINT",
+            "TINYINT UNSIGNED", "SMALLINT UNSIGNED", "MEDIUMINT UNSIGNED", "INT UNSIGNED"));
 
     @Value("${batch.size:1000}")
     private Integer batchSize;
 
+    /**
+     * 一个批次缓存的数据超过该字节数时提前发送，避免大字段表按行数攒批占用过多内存
+     */
+    @Value("${sync.batch.max.bytes:67108864}")
+    private Long batchMaxBytes;
+
+    /**
+     * 是否按写入耗时自适应调整各表的批大小和并发写入数
+     */
+    @Value("${sync.batch.auto.enabled:false}")
+    private Boolean batchAutoEnabled;
+
+    @Value("${sync.batch.auto.min:100}")
+    private Integer batchAutoMin;
+
+    @Value("${sync.batch.auto.max:20000}")
+    private Integer batchAutoMax;
+
+    /**
+     * 批大小每次增加的行数
+     */
+    @Value("${sync.batch.auto.step:500}")
+    private Integer batchAutoStep;
+
+    /**
+     * 单个批次写入耗时的目标值，超过时批大小和并发写入数减半
+     */
+    @Value("${sync.batch.auto.target.latency.ms:1000}")
+    private Long batchTargetLatencyMs;
+
+    /**
+     * 同时向高斯发送批次的线程数上限
+     */
+    @Value("${sync.write.concurrency.max:16}")
+    private Integer writeConcurrencyMax;
+
+    /**
+     * 是否启用容错写入，批次写入失败时拆分定位出错的行写入死信文件，其余行照常提交
+     */
+    @Value("${sync.tolerant.enabled:false}")
+    private Boolean tolerantEnabled;
+
+    @Value("${sync.dead.letter.dir:dead-letter}")
+    private String deadLetterDir;
+
+    /**
+     * 并行同步的工作线程数，每个线程持有独立的MySQL/高斯连接，1表示串行同步
+     */
+    @Value("${sync.workers:1}")
+    private Integer workerSize;
+
+    /**
+     * 是否按预计耗时从大到小安排表的同步顺序
+     */
+    @Value("${sync.schedule.enabled:true}")
+    private Boolean scheduleEnabled;
+
+    /**
+     * 是否记录各表的实际吞吐量，用于之后同步的耗时估算
+     */
+    @Value("${sync.schedule.history.enabled:true}")
+    private Boolean scheduleHistoryEnabled;
+
+    /**
+     * 没有吞吐量记录时单线程的预计吞吐量（字节/秒）
+     */
+    @Value("${sync.schedule.default.throughput:16777216}")
+    private Long scheduleDefaultThroughput;
+
+    private TableScheduler tableScheduler;
+
+    /**
+     * 大表按整型主键切分的分片数，1表示不切分
+     */
+    @Value("${sync.chunk.count:1}")
+    private Integer chunkCount;
+
+    /**
+     * 记录数达到该值的表才会按主键范围切分
+     */
+    @Value("${sync.chunk.min.rows:1000000}")
+    private Long chunkMinRows;
+
+    /**
+     * 单表分片并行复制的线程数，每个线程持有独立的连接
+     */
+    @Value("${sync.chunk.workers:4}")
+    private Integer chunkWorkers;
+
+    /**
+     * MySQL读取方式，DEFAULT会把整个结果集缓存在内存中，大表应使用STREAM或CURSOR
+     */
+    @Value("${sync.read.mode:DEFAULT}")
+    private ReadMode readMode;
+
+    /**
+     * CURSOR模式下每次从服务端拉取的行数
+     */
+    @Value("${sync.fetch.size:1000}")
+    private Integer fetchSize;
+
+    /**
+     * 高斯端写入方式，INSERT、MULTI_VALUES或COPY
+     */
+    @Value("${sync.loader:INSERT}")
+    private LoaderType loader;
+
+    /**
+     * 按表指定写入方式，格式: table1:COPY,table2:INSERT
+     */
+    @Value("${sync.loader.tables:}")
+    private String loaderTables;
+
+    @Value("${sync.copy.format:TEXT}")
+    private CopyFormat copyFormat;
+
+    private final Map<String, LoaderType> tableLoaders = new HashMap<>();
+
+    /**
+     * 是否启用读写流水线，读取线程与写入线程通过有界队列交接批次
+     */
+    @Value("${sync.pipeline.enabled:false}")
+    private Boolean pipelineEnabled;
+
+    /**
+     * 流水线队列可缓存的批次数，队列满时读取线程阻塞
+     */
+    @Value("${sync.pipeline.queue.capacity:4}")
+    private Integer pipelineQueueCapacity;
+
+    /**
+     * 流水线写入线程数，每个写入线程持有独立的高斯连接
+     */
+    @Value("${sync.pipeline.writers:1}")
+    private Integer pipelineWriters;
+
+    private static final List<Object[]> END_OF_DATA = Collections.emptyList();
+
+    /**
+     * 是否启用分片检查点，启用后按提交间隔分段提交，失败后重新同步时跳过已完成的表并从检查点继续
+     */
+    @Value("${sync.checkpoint.enabled:false}")
+    private Boolean checkpointEnabled;
+
+    @Value("${sync.checkpoint.table:sync_checkpoint}")
+    private String checkpointTable;
+
+    /**
+     * 启用检查点时每多少个批次提交一次
+     */
+    @Value("${sync.commit.interval:10}")
+    private Integer commitInterval;
+
+    /**
+     * 增量同步的表及其水位列（更新时间或递增主键），格式: table1:updated_at,table2:id
+     */
+    @Value("${sync.incremental.tables:}")
+    private String incrementalTables;
+
+    @Value("${sync.incremental.watermark.table:sync_watermark}")
+    private String watermarkTable;
+
+    private final Map<String, String> watermarkColumns = new HashMap<>();
+
+    /**
+     * 同步前统计行数的方式，EXACT、PARALLEL、ESTIMATED或NONE，只影响进度显示和大表切分的判断
+     */
+    @Value("${sync.count.strategy:EXACT}")
+    private CountStrategy countStrategy;
+
+    /**
+     * 是否在全量同步开始前记录binlog位置，全量完成后从该位置增量同步
+     */
+    @Value("${cdc.enabled:false}")
+    private Boolean cdcEnabled;
+
+    private final DataSourceManager dataSourceManager;
+
+    private final RowCountService rowCountService;
+
+    private final BinlogSyncService binlogSyncService;
+
+    private final MigrationMetrics metrics;
+
+    private final MigrationTaskService migrationTaskService;
+
+    private final SchemaCatalogService schemaCatalogService;
+
+    /**
+     * 运行中的同步任务，任务结束后移除
+     */
+    private final Map<String, SyncContext> contexts = new ConcurrentHashMap<>();
+
+    public TransferringDataServiceImpl(DataSourceManager dataSourceManager, RowCountService rowCountService,
+                                       BinlogSyncService binlogSyncService, MigrationMetrics metrics,
+                                       MigrationTaskService migrationTaskService,
+                                       SchemaCatalogService schemaCatalogService) {
+        this.dataSourceManager = dataSourceManager;
+        this.rowCountService = rowCountService;
+        this.binlogSyncService = binlogSyncService;
+        this.metrics = metrics;
+        this.migrationTaskService = migrationTaskService;
+        this.schemaCatalogService = schemaCatalogService;
+    }
 
-    private class SyncProgress {
-        long totalRecords = 0;
-        long processedRecords = 0;
-        Map<String, Long> tableRecords = new HashMap<>();
-        Map<String, Long> tableProcessed = new HashMap<>();
-        int totalTables = 0;
-        int processedTables = 0;
 
-        void reset() {
-            totalRecords = 0;
-            processedRecords = 0;
-            tableRecords.clear();
-            tableProcessed.clear();
-            totalTables = 0;
-            processedTables = 0;
+    @PostConstruct
+    public void initTableLoaders() {
+        for (String entry : loaderTables.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                tableLoaders.put(parts[0].trim().toLowerCase(), LoaderType.valueOf(parts[1].trim().toUpperCase()));
+            }
+        }
+        for (String entry : incrementalTables.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length == 2) {
+                watermarkColumns.put(parts[0].trim().toLowerCase(), parts[1].trim());
+            }
         }
+        tableScheduler = new TableScheduler(scheduleDefaultThroughput);
     }
 
-    static {
-        initializeTypeConverters();
+    /**
+     * 按每个任务可用的连接数确定本次同步的并行设置。每个任务最多同时持有 sync.workers * sync.chunk.workers 对连接，
+     * 流水线的每一路另外占用 sync.pipeline.writers - 1 个高斯连接，失败清理时再借用一个。
+     * 超出时依次调小分片线程数、表线程数和流水线写入线程数，避免运行中等待连接超时；配置值本身不变
+     */
+    private void applyConnectionBudget(SyncContext ctx) {
+        ctx.workers = Math.max(1, workerSize);
+        ctx.chunkWorkers = Math.max(1, chunkWorkers);
+        ctx.pipelineWriters = pipelineEnabled ? Math.max(1, pipelineWriters) : 1;
+        int budget = dataSourceManager.connectionsPerTask();
+        int required = connectionsNeeded(ctx);
+        if (required <= budget) {
+            return;
+        }
+        while (ctx.chunkWorkers > 1 && connectionsNeeded(ctx) > budget) {
+            ctx.chunkWorkers--;
+        }
+        while (ctx.workers > 1 && connectionsNeeded(ctx) > budget) {
+            ctx.workers--;
+        }
+        while (ctx.pipelineWriters > 1 && connectionsNeeded(ctx) > budget) {
+            ctx.pipelineWriters--;
+        }
+        logger.warn("任务 {} 的并行设置需要 {} 个连接，超出每个任务可用的 {} 个，本次调整为 sync.workers={}，"
+                        + "sync.chunk.workers={}，sync.pipeline.writers={}",
+                ctx.taskId, required, budget, ctx.workers, ctx.chunkWorkers, ctx.pipelineWriters);
     }
 
-    private long totalRecords = 0;
-    private long processedRecords = 0;
-    private LocalDateTime startTime;
+    private static int connectionsNeeded(SyncContext ctx) {
+        return ctx.workers * ctx.chunkWorkers * ctx.pipelineWriters + 1;
+    }
 
     @Override
     public void startSync(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String taskId) {
-        startTime = LocalDateTime.now();
+        runSync(mysqlDataBaseInfo, gaussDataBaseInfo, taskId, false);
+    }
+
+    @Override
+    public void startIncrementalSync(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String taskId) {
+        runSync(mysqlDataBaseInfo, gaussDataBaseInfo, taskId, true);
+    }
+
+    @Override
+    public Map<String, Object> getProgressSnapshot(String taskId) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        SyncContext ctx = contexts.get(taskId);
+        if (ctx == null) {
+            return snapshot;
+        }
+        SyncContext.SyncProgress progress = ctx.progress;
+        snapshot.put("totalRecords", progress.totalRecords.sum());
+        snapshot.put("processedRecords", progress.processedRecords.sum());
+        snapshot.put("totalTables", progress.totalTables);
+        snapshot.put("processedTables", progress.processedTables.get());
+        snapshot.put("errorTables", ctx.errorTables.size());
+        List<Map<String, Object>> activeTables = new ArrayList<>();
+        progress.tables.forEach((table, counters) -> {
+            long processed = counters.processed.sum();
+            if (!counters.finished && processed > 0) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("table", table);
+                entry.put("processed", processed);
+                entry.put("total", counters.total);
+                activeTables.add(entry);
+            }
+        });
+        snapshot.put("activeTables", activeTables);
+        return snapshot;
+    }
+
+    private void runSync(DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, String taskId,
+                         boolean incremental) {
+        SyncContext ctx = new SyncContext(taskId, migrationTaskService.getControl(taskId), incremental);
+        if (contexts.putIfAbsent(taskId, ctx) != null) {
+            logger.error("任务 {} 已在同步中", taskId);
+            return;
+        }
+        applyConnectionBudget(ctx);
         ProcessInfo processInfo = new ProcessInfo(30.00, ProcessInfo.TaskStatus.RUNNING, ProcessInfo.TaskType.TRANSFER_DATA);
         ProcessInfo.taskProgressMap.put(taskId, processInfo);
-        logger.info("开始数据同步 - {}", startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        logger.info("任务 {} 开始数据同步 - {}", taskId, ctx.startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
 
         try (Connection mysqlConn = getConnection(mysqlDataBaseInfo);
              Connection gaussConn = getConnection(gaussDataBaseInfo)) {
 
+            ctx.writeLimiter = batchAutoEnabled ? new WriteConcurrencyLimiter(writeConcurrencyMax, batchTargetLatencyMs) : null;
+            if (checkpointEnabled && !incremental) {
+                CheckpointStore store = new CheckpointStore(checkpointTable, mysqlDataBaseInfo.getSchema());
+                store.createTableIfAbsent(gaussConn);
+                ctx.checkpointStore = store;
+            }
+            if (!watermarkColumns.isEmpty()) {
+                WatermarkStore store = new WatermarkStore(watermarkTable, mysqlDataBaseInfo.getSchema());
+                store.createTableIfAbsent(gaussConn);
+                ctx.watermarkStore = store;
+            }
+            // 从检查点继续时保留最初记录的binlog位置和高水位，已提交的数据可能早于当前位置
+            boolean resuming = ctx.checkpointStore != null && ctx.checkpointStore.hasCheckpoints(gaussConn);
+
+            if (cdcEnabled && !incremental) {
+                binlogSyncService.recordStartPosition(mysqlDataBaseInfo, gaussDataBaseInfo, resuming);
+            }
+
+            // 两端的表结构在本次任务内只取一次，库结构未变化时直接使用缓存
+            ctx.mysqlSchema = schemaCatalogService.getMetadata(mysqlDataBaseInfo, mysqlConn);
+            ctx.gaussSchema = schemaCatalogService.getMetadata(gaussDataBaseInfo, gaussConn);
+
             // 获取需要同步的表列表
-            List<String> tables = getTables(mysqlConn.getMetaData());
-            progress.totalTables = tables.size();
-            // 首先统计所有表的记录数
-            countAllTablesRecords(mysqlConn, tables);
+            List<String> tables = ctx.mysqlSchema.getTableNames();
+            if (incremental) {
+                tables.removeIf(table -> !watermarkColumns.containsKey(table.trim().toLowerCase()));
+                logger.info("增量同步模式，配置了水位列的表: {}", tables);
+            } else if (ctx.watermarkStore != null) {
+                recordWatermarks(ctx, mysqlConn, gaussConn, tables, resuming);
+            }
+            ctx.progress.totalTables = tables.size();
+            // 首先统计所有表的记录数，增量同步只按表数计算进度
+            countAllTablesRecords(ctx, mysqlDataBaseInfo, tables, incremental ? CountStrategy.NONE : countStrategy);
 
             // 预检查所有表
             for (String table : tables) {
                 try {
-                    checkTableCompatibility(table.trim(), mysqlConn, gaussConn);
+                    checkTableCompatibility(table.trim(), ctx);
                 } catch (SQLException e) {
                     logger.error("表 {} 预检查失败，将跳过该表", table.trim(), e);
-                    errorTables.add(table.trim());
+                    ctx.errorTables.add(table.trim());
                 }
             }
             // 同步表
+            List<String> pendingTables = new ArrayList<>();
             for (String table : tables) {
-                if (!errorTables.contains(table.trim())) {
-                    try {
-                        syncTable(table.trim(), mysqlConn, gaussConn, taskId);
-                        progress.processedTables++;
-                    } catch (SQLException e) {
-                        logger.error("同步表 {} 失败", table.trim(), e);
-                        errorTables.add(table.trim());
-                    }
+                if (!ctx.errorTables.contains(table.trim())) {
+                    pendingTables.add(table.trim());
                 }
             }
+            if (scheduleEnabled && !incremental) {
+                pendingTables = scheduleTables(ctx, mysqlConn, pendingTables);
+            }
+            BlockingQueue<String> tableQueue = new LinkedBlockingQueue<>(pendingTables);
+            if (ctx.workers <= 1 || tableQueue.size() <= 1) {
+                drainTableQueue(tableQueue, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+            } else {
+                syncTablesInParallel(tableQueue, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+            }
 
-            generateSyncReport();
+            generateSyncReport(ctx);
 
-            progress.reset();
+            if (ctx.watermarkStore != null && !incremental) {
+                // 全量同步失败的表不能保留开始前的高水位，否则增量同步会漏掉其余数据
+                for (String table : ctx.errorTables) {
+                    if (watermarkColumns.containsKey(table.toLowerCase())) {
+                        ctx.watermarkStore.delete(gaussConn, table);
+                    }
+                }
+            }
+
+            if (ctx.checkpointStore != null && ctx.errorTables.isEmpty() && !ctx.control.isCancelled()) {
+                ctx.checkpointStore.clear(gaussConn);
+                logger.info("所有表同步完成，已清除检查点");
+            }
 
         } catch (Exception e) {
             logger.error("同步过程发生错误", e);
+        } finally {
+            closeDeadLetterFiles(ctx);
+            contexts.remove(taskId);
+        }
+    }
+
+    /**
+     * 多个工作线程并行消费表队列。调用线程使用已持有的连接作为其中一个工作线程，只额外借用workers - 1对连接
+     */
+    private void syncTablesInParallel(BlockingQueue<String> tableQueue, Connection mysqlConn, Connection gaussConn,
+                                      DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, SyncContext ctx)
+            throws InterruptedException {
+        int workers = Math.min(ctx.workers, tableQueue.size());
+        logger.info("并行同步模式，工作线程数: {}", workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers - 1, new CustomizableThreadFactory("sync-worker-"));
+        try {
+            for (int i = 1; i < workers; i++) {
+                executor.submit(() -> {
+                    try (Connection workerMysqlConn = getConnection(mysqlDataBaseInfo);
+                         Connection workerGaussConn = getConnection(gaussDataBaseInfo)) {
+                        drainTableQueue(tableQueue, workerMysqlConn, workerGaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+                    } catch (SQLException e) {
+                        logger.error("同步工作线程获取数据库连接失败", e);
+                    }
+                });
+            }
+            drainTableQueue(tableQueue, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        // 工作线程被中断等异常情况下，剩余的表记为失败
+        String table;
+        while ((table = tableQueue.poll()) != null) {
+            logger.error("表 {} 未被任何工作线程处理", table);
+            ctx.errorTables.add(table);
         }
     }
 
-    private boolean tableExists(String tableName, Connection conn) throws SQLException {
-        try (ResultSet rs = conn.getMetaData().getTables(null, null, tableName, null)) {
-            return rs.next();
+    private void drainTableQueue(BlockingQueue<String> tableQueue, Connection mysqlConn, Connection gaussConn,
+                                 DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, SyncContext ctx) {
+        TaskControl control = ctx.control;
+        String table;
+        while ((table = tableQueue.poll()) != null) {
+            try {
+                // 取消后剩余的表都记为失败，不会清除检查点和高水位
+                control.checkpoint();
+                long start = System.nanoTime();
+                syncTable(table, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+                recordThroughput(ctx, table, System.nanoTime() - start);
+                ctx.progress.correctTableRecords(table, ctx.progress.tableProcessed(table));
+                ctx.progress.processedTables.incrementAndGet();
+            } catch (SQLException e) {
+                logger.error("同步表 {} 失败", table, e);
+                ctx.errorTables.add(table);
+            } finally {
+                metrics.tableFinished(ctx.taskId, table);
+            }
+        }
+    }
+
+    /**
+     * 按预计耗时从大到小排列待同步的表，并按工作线程数估算总耗时。读取表大小失败时保持原顺序
+     */
+    private List<String> scheduleTables(SyncContext ctx, Connection mysqlConn, List<String> tables) {
+        Map<String, TableScheduler.TableSize> sizes;
+        try {
+            sizes = TableScheduler.loadSizes(mysqlConn);
+        } catch (SQLException e) {
+            logger.warn("读取表大小失败，按原顺序同步", e);
+            return tables;
+        }
+        Map<String, Double> estimates = new HashMap<>();
+        for (String table : tables) {
+            TableScheduler.TableSize size = sizes.getOrDefault(table, new TableScheduler.TableSize(0, 0, 0));
+            // 优先使用本次统计的行数，没有统计时使用统计信息中的估算值
+            long rows = ctx.progress.tableRecords(table);
+            long bytes = size.estimateBytes(rows > 0 ? rows : size.rows);
+            ctx.estimatedBytes.put(table, bytes);
+            estimates.put(table, tableScheduler.estimateSeconds(table, bytes, tableParallelism(ctx, table)));
+        }
+        List<String> ordered = TableScheduler.order(estimates);
+        int workers = ctx.workers <= 1 || ordered.size() <= 1 ? 1 : Math.min(ctx.workers, ordered.size());
+        List<Double> orderedSeconds = new ArrayList<>();
+        for (String table : ordered) {
+            orderedSeconds.add(estimates.get(table));
+        }
+        ctx.expectedMakespanSeconds = TableScheduler.makespan(orderedSeconds, workers);
+        logger.info("按预计耗时安排同步顺序: {}，工作线程数: {}，预计总耗时: {} 秒", ordered, workers,
+                String.format("%.0f", ctx.expectedMakespanSeconds));
+        return ordered;
+    }
+
+    /**
+     * 表同步时的并行线程数，达到分片条件的表按分片并行复制
+     */
+    private int tableParallelism(SyncContext ctx, String tableName) {
+        return shouldSplit(ctx, tableName) ? Math.max(1, Math.min(ctx.chunkWorkers, chunkCount)) : 1;
+    }
+
+    /**
+     * 太快完成的表（如检查点中已完成而跳过的表）耗时不具代表性，不记录
+     */
+    private void recordThroughput(SyncContext ctx, String tableName, long elapsedNanos) {
+        Long bytes = ctx.estimatedBytes.get(tableName);
+        if (scheduleHistoryEnabled && bytes != null && elapsedNanos >= TimeUnit.SECONDS.toNanos(1)) {
+            tableScheduler.recordThroughput(tableName, bytes, tableParallelism(ctx, tableName), elapsedNanos);
         }
     }
 
@@ -131,40 +564,20 @@ public class TransferringDataServiceImpl implements TransferringDataService {
         return expectedGaussType.equalsIgnoreCase(gaussType);
     }
 
-    private void countAllTablesRecords(Connection conn, List<String> tables) throws SQLException {
+    private void countAllTablesRecords(SyncContext ctx, DataBaseInfo mysqlDataBaseInfo, List<String> tables,
+                                       CountStrategy strategy)
+            throws SQLException {
+        Map<String, Long> counts = rowCountService.countRows(mysqlDataBaseInfo, tables, strategy);
         for (String table : tables) {
             String trimmedTable = table.trim();
-            if (!errorTables.contains(trimmedTable)) {
-                long count = getTableRecordCount(conn, trimmedTable);
-                progress.tableRecords.put(trimmedTable, count);
-                progress.totalRecords += count;
-                progress.tableProcessed.put(trimmedTable, 0L);
+            if (!ctx.errorTables.contains(trimmedTable)) {
+                long count = counts.getOrDefault(trimmedTable, 0L);
+                ctx.progress.table(trimmedTable).total = count;
+                ctx.progress.totalRecords.add(count);
                 logger.info("表 {} 总记录数: {}", trimmedTable, count);
             }
         }
-        logger.info("所有表总记录数: {}", progress.totalRecords);
-    }
-
-    private long getTableRecordCount(Connection conn, String tableName) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM " + tableName;
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getLong(1);
-            }
-            return 0;
-        }
-    }
-
-    private void countTotalRecords(Connection conn, String tableName) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM " + tableName;
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                totalRecords = rs.getLong(1);
-                logger.info("表 {} 总记录数: {}", tableName, totalRecords);
-            }
-        }
+        logger.info("所有表总记录数: {} (统计方式: {})", ctx.progress.totalRecords.sum(), strategy);
     }
 
     private String generateSelectSql(String tableName, List<ColumnInfo> columns) {
@@ -177,377 +590,939 @@ public class TransferringDataServiceImpl implements TransferringDataService {
         return sql.toString();
     }
 
-    private String generateInsertSql(String tableName, List<ColumnInfo> columns) {
-        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
-        StringBuilder values = new StringBuilder(") VALUES (");
-
-        for (int i = 0; i < columns.size(); i++) {
-            if (i > 0) {
-                sql.append(", ");
-                values.append(", ");
-            }
-            sql.append(columns.get(i).name);
-            values.append("?");
+    private void displayProgress(SyncContext ctx, String currentTable) {
+        SyncContext.SyncProgress progress = ctx.progress;
+        // 计算当前表的进度，行数为估算值时已处理数可能超过总数
+        long tableTotal = progress.tableRecords(currentTable);
+        long tableProcessed = progress.tableProcessed(currentTable);
+        double tableProgress = tableTotal == 0 ? 0 : Math.min(100, (double) tableProcessed / tableTotal * 100);
+
+        // 计算总体进度，没有行数时按已完成的表数计算
+        long processedRecords = progress.processedRecords.sum();
+        long totalRecords = progress.totalRecords.sum();
+        double totalProgress;
+        if (totalRecords > 0) {
+            totalProgress = Math.min(100, (double) processedRecords / totalRecords * 100);
+        } else {
+            totalProgress = progress.totalTables == 0 ? 100 : (double) progress.processedTables.get() / progress.totalTables * 100;
         }
 
-        return sql.toString() + values.toString() + ")";
-    }
-
-    private void executeBatch(PreparedStatement stmt, Connection conn) throws SQLException {
-        try {
-            int[] results = stmt.executeBatch();
-            int successCount = 0;
-            for (int result : results) {
-                if (result >= 0) successCount++;
-            }
-            logger.debug("批处理执行完成: 成功 {}/{}", successCount, results.length);
-        } catch (SQLException e) {
-            conn.rollback();
-            throw e;
-        }
-    }
-
-    private void displayProgress(String currentTable, String taskId) {
-        // 计算当前表的进度
-        long tableTotal = progress.tableRecords.get(currentTable);
-        long tableProcessed = progress.tableProcessed.get(currentTable);
-        double tableProgress = tableTotal == 0 ? 100 : (double) tableProcessed / tableTotal * 100;
-
-        // 计算总体进度
-        double totalProgress = progress.totalRecords == 0 ? 100 : (double) progress.processedRecords / progress.totalRecords * 100;
-
-        // 计算预估剩余时间
-        long elapsedSeconds = java.time.Duration.between(startTime, LocalDateTime.now()).getSeconds();
-        double remainingSeconds = elapsedSeconds * ((100 - totalProgress) / totalProgress);
+        // 计算预估剩余时间，进度为0时无法估算
+        long elapsedSeconds = java.time.Duration.between(ctx.startTime, LocalDateTime.now()).getSeconds();
+        String remainingSeconds = totalProgress <= 0 ? "未知"
+                : String.format("%.0f", elapsedSeconds * ((100 - totalProgress) / totalProgress));
         logger.info("同步进度 - 表 {}: {}% ({}/{}), 总进度: {}% ({}/{}), 已处理表数: {}/{}, 预估剩余时间: {} 秒",
                 currentTable,
                 String.format("%.2f", tableProgress),
                 tableProcessed,
                 tableTotal,
                 String.format("%.2f", totalProgress),
-                progress.processedRecords,
-                progress.totalRecords,
-                progress.processedTables,
+                processedRecords,
+                totalRecords,
+                progress.processedTables.get(),
                 progress.totalTables,
                 remainingSeconds);
-        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(taskId);
+        ProcessInfo processInfo = ProcessInfo.getTaskProgressMap().get(ctx.taskId);
         processInfo.setProcess(30.00 + totalProgress * 0.6);
     }
 
-    // TypeConverter接口定义
-    private interface TypeConverter {
-        Object convert(ResultSet rs, int columnIndex) throws SQLException;
-
-        void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException;
-    }
-
-    private void generateSyncReport() {
+    private void generateSyncReport(SyncContext ctx) {
+        SyncContext.SyncProgress progress = ctx.progress;
         LocalDateTime endTime = LocalDateTime.now();
-        long duration = java.time.Duration.between(startTime, endTime).getSeconds();
+        long duration = java.time.Duration.between(ctx.startTime, endTime).getSeconds();
 
         StringBuilder report = new StringBuilder();
         report.append("\n=== 数据同步报告 ===\n");
-        report.append("开始时间: ").append(startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append("\n");
+        report.append("开始时间: ").append(ctx.startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append("\n");
         report.append("结束时间: ").append(endTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append("\n");
         report.append("总耗时: ").append(duration).append(" 秒\n");
-        report.append("总记录数: ").append(progress.totalRecords).append("\n");
-        report.append("已同步记录数: ").append(progress.processedRecords).append("\n");
+        report.append("总记录数: ").append(progress.totalRecords.sum()).append("\n");
+        report.append("已同步记录数: ").append(progress.processedRecords.sum()).append("\n");
         report.append("总表数: ").append(progress.totalTables).append("\n");
-        report.append("成功同步表数: ").append(progress.processedTables).append("\n");
-        report.append("失败表数: ").append(errorTables.size()).append("\n");
-        report.append("同步失败的表: ").append(errorTables.isEmpty() ? "无" : String.join(", ", errorTables)).append("\n");
+        report.append("成功同步表数: ").append(progress.processedTables.get()).append("\n");
+        report.append("失败表数: ").append(ctx.errorTables.size()).append("\n");
+        if (ctx.expectedMakespanSeconds >= 0) {
+            report.append("预计总耗时: ").append(String.format("%.0f", ctx.expectedMakespanSeconds)).append(" 秒\n");
+        }
+        report.append("同步失败的表: ").append(ctx.errorTables.isEmpty() ? "无" : String.join(", ", ctx.errorTables)).append("\n");
 
         // 添加每个表的同步详情
         report.append("\n各表同步详情:\n");
-        progress.tableRecords.forEach((table, total) -> {
-            long processed = progress.tableProcessed.get(table);
-            double tableProgress = (double) processed / total * 100;
+        progress.tables.forEach((table, counters) -> {
+            long total = counters.total;
+            long processed = counters.processed.sum();
+            double tableProgress = total == 0 ? 100 : (double) processed / total * 100;
             report.append(String.format("表 %s: %d/%d (%.2f%%)\n",
                     table, processed, total, tableProgress));
         });
 
+        if (tolerantEnabled) {
+            report.append("\n被拒绝的行:\n");
+            long rejected = 0;
+            for (DeadLetterFile file : ctx.deadLetterFiles.values()) {
+                if (file.getRows() > 0) {
+                    rejected += file.getRows();
+                    report.append(String.format("表 %s: %d 行 (%s)\n", file.getTableName(),
+                            file.getRows(), file.getFile().getPath()));
+                }
+            }
+            if (rejected == 0) {
+                report.append("无\n");
+            }
+        }
+
+        if (batchAutoEnabled) {
+            report.append("\n自适应批大小:\n");
+            ctx.batchTuners.forEach((table, tuner) -> report.append("表 ").append(table).append(": ")
+                    .append(tuner.summary()).append("\n"));
+            if (ctx.writeLimiter != null) {
+                report.append("并发写入上限: ").append(ctx.writeLimiter.limit()).append("\n");
+            }
+        }
+
         report.append("==================\n");
 
         logger.info(report.toString());
     }
 
-    private void checkTableCompatibility(String tableName, Connection mysqlConn, Connection gaussConn)
+    private void checkTableCompatibility(String tableName, SyncContext ctx)
             throws SQLException {
         logger.info("检查表 {}", tableName);
 
         // 检查表是否存在
-        if (!tableExists(tableName, mysqlConn)) {
+        if (ctx.mysqlSchema.getTable(tableName) == null) {
             throw new SQLException("MySQL中不存在表: " + tableName);
         }
-        if (!tableExists(tableName, gaussConn)) {
+        if (ctx.gaussSchema.getTable(tableName) == null) {
             throw new SQLException("GaussDB中不存在表: " + tableName);
         }
     }
 
     // 主要同步方法
-    private void syncTable(String tableName, Connection mysqlConn, Connection gaussConn, String taskId)
+    private void syncTable(String tableName, Connection mysqlConn, Connection gaussConn,
+                           DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, SyncContext ctx)
             throws SQLException {
         logger.info("开始同步表: {}", tableName);
 
         // 获取表结构和类型映射信息
-        List<ColumnInfo> columns = getTableColumns(mysqlConn, tableName);
+        List<ColumnInfo> columns = getTableColumns(ctx, tableName);
+
+        if (ctx.incremental) {
+            syncTableIncrementally(tableName, columns, mysqlConn, gaussConn, ctx);
+            return;
+        }
+
+        if (ctx.checkpointStore != null) {
+            syncTableWithCheckpoints(tableName, columns, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+            return;
+        }
+
+        // 大表按主键范围切分后并行复制
+        if (shouldSplit(ctx, tableName)) {
+            String keyColumn = findIntegerKey(ctx, tableName, columns);
+            if (keyColumn != null) {
+                List<TableChunk> chunks = splitKeyRanges(mysqlConn, tableName, keyColumn, chunkCount);
+                if (chunks.size() > 1) {
+                    syncTableInChunks(tableName, columns, chunks, mysqlConn, gaussConn,
+                            mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+                    return;
+                }
+            }
+        }
+
+        long tableProcessed = copyRows(tableName, columns, generateSelectSql(tableName, columns), null,
+                mysqlConn, gaussConn, gaussDataBaseInfo, ctx);
+        logger.info("表 {} 同步完成，共同步 {} 条记录", tableName, tableProcessed);
+    }
+
+    /**
+     * 全量同步开始前记录各表水位列的最大值，全量完成后的增量同步从这里开始。
+     * 全量复制期间修改的行在下一次增量同步时会按主键重新写入
+     */
+    private void recordWatermarks(SyncContext ctx, Connection mysqlConn, Connection gaussConn, List<String> tables,
+                                  boolean keepExisting)
+            throws SQLException {
+        for (String table : tables) {
+            String tableName = table.trim();
+            String column = watermarkColumns.get(tableName.toLowerCase());
+            if (column == null || (keepExisting && ctx.watermarkStore.load(gaussConn, tableName, column) != null)) {
+                continue;
+            }
+            String high = queryMaxWatermark(mysqlConn, tableName, column);
+            if (high != null) {
+                ctx.watermarkStore.save(gaussConn, tableName, column, high);
+                logger.info("表 {} 全量同步前的高水位: {} = {}", tableName, column, high);
+            }
+        }
+        if (!gaussConn.getAutoCommit()) {
+            gaussConn.commit();
+        }
+    }
 
-        // 计算总记录数
-        countTotalRecords(mysqlConn, tableName);
+    /**
+     * 增量同步一张表：读取(高水位, 当前最大值]内的行按主键写入高斯，数据与新的高水位在同一事务内提交。
+     * 时间类型的水位使用>=，同一时间戳上后提交的行会被重新写入；晚于本次最大值提交但水位更小的行会被漏掉，
+     * 水位列应由数据库在提交时生成或单调递增
+     */
+    private void syncTableIncrementally(String tableName, List<ColumnInfo> columns, Connection mysqlConn,
+                                        Connection gaussConn, SyncContext ctx) throws SQLException {
+        String column = watermarkColumns.get(tableName.toLowerCase());
+        ColumnInfo watermarkColumn = columns.stream()
+                .filter(c -> c.name.equalsIgnoreCase(column))
+                .findFirst()
+                .orElseThrow(() -> new SQLException("表 " + tableName + " 中不存在水位列 " + column));
+        int[] keyIndexes = findPrimaryKeyIndexes(ctx, tableName, columns);
+        if (keyIndexes.length == 0) {
+            throw new SQLException("表 " + tableName + " 没有主键，无法增量同步");
+        }
+        boolean integerWatermark = INTEGER_KEY_TYPES.contains(watermarkColumn.mysqlType);
 
-        // 准备SQL语句
-        String selectSql = generateSelectSql(tableName, columns);
-        String insertSql = generateInsertSql(tableName, columns);
+        String low = ctx.watermarkStore.load(gaussConn, tableName, column);
+        String high = queryMaxWatermark(mysqlConn, tableName, column);
+        if (high == null) {
+            logger.info("表 {} 的水位列 {} 没有数据，跳过", tableName, column);
+            return;
+        }
 
-        try (PreparedStatement mysqlStmt = mysqlConn.prepareStatement(selectSql);
-             PreparedStatement gaussStmt = gaussConn.prepareStatement(insertSql);
-             ResultSet rs = mysqlStmt.executeQuery()) {
+        // 没有高水位时整表按主键写入
+        String condition = low == null
+                ? "(" + column + " <= ? OR " + column + " IS NULL)"
+                : column + (integerWatermark ? " > ?" : " >= ?") + " AND " + column + " <= ?";
+        String selectSql = generateSelectSql(tableName, columns) + " WHERE " + condition;
+
+        TaskControl control = ctx.control;
+        try (PreparedStatement mysqlStmt = prepareSelect(mysqlConn, selectSql);
+             TaskControl.Registration ignored = control.register(mysqlStmt);
+             RowWriter writer = tolerantEnabled
+                     ? new TolerantRowWriter(gaussConn, tableName, columns,
+                     () -> new UpsertRowWriter(gaussConn, tableName, columns, keyIndexes), deadLetterFile(ctx, tableName))
+                     : new UpsertRowWriter(gaussConn, tableName, columns, keyIndexes)) {
+            int index = 1;
+            if (low != null) {
+                bindWatermark(mysqlStmt, index++, low, integerWatermark);
+            }
+            bindWatermark(mysqlStmt, index, high, integerWatermark);
 
             gaussConn.setAutoCommit(false);
+            BatchTuner tuner = batchTuner(ctx, tableName);
+            int currentBatchSize = tuner.batchSize();
             int batchCount = 0;
-            long tableProcessed = 0;
-
-            while (rs.next()) {
-                for (int i = 0; i < columns.size(); i++) {
-                    ColumnInfo column = columns.get(i);
-                    Object value = column.converter.convert(rs, i + 1);
-                    try {
-                        column.converter.setParameter(gaussStmt, i + 1, value);
-                    } catch (SQLException e) {
-                        logger.error("转换数据时出错 - 表: {}, 列: {}, MySQL类型: {}, 高斯类型: {}, 值: {}",
-                                tableName, column.name, column.mysqlType, column.gaussType, value);
-                        throw e;
+            long copied = 0;
+            try (ResultSet rs = mysqlStmt.executeQuery()) {
+                while (rs.next()) {
+                    writer.addRow(rs);
+                    batchCount++;
+                    copied++;
+                    if (batchCount >= currentBatchSize || writer.bufferedBytes() >= batchMaxBytes) {
+                        flushBatch(ctx, tableName, writer, batchCount, tuner);
+                        currentBatchSize = tuner.batchSize();
+                        recordProcessed(ctx, tableName, batchCount);
+                        batchCount = 0;
+                        displayProgress(ctx, tableName);
+                        control.checkpoint();
                     }
                 }
-
-                gaussStmt.addBatch();
-                batchCount++;
-                processedRecords++;
-                tableProcessed++;
-                progress.processedRecords++;
-                progress.tableProcessed.put(tableName, tableProcessed);
-
-                if (batchCount >= batchSize) {
-                    executeBatch(gaussStmt, gaussConn);
-                    batchCount = 0;
-                    displayProgress(tableName, taskId);
-                }
             }
-
+            writer.finish();
             if (batchCount > 0) {
-                executeBatch(gaussStmt, gaussConn);
-                displayProgress(tableName, taskId);
+                recordProcessed(ctx, tableName, batchCount);
+                displayProgress(ctx, tableName);
             }
 
+            ctx.watermarkStore.save(gaussConn, tableName, column, high);
             gaussConn.commit();
-            logger.info("表 {} 同步完成，共同步 {} 条记录", tableName, tableProcessed);
+            logger.info("表 {} 增量同步完成，水位 {}: {} -> {}，共同步 {} 条记录", tableName, column, low, high, copied);
 
         } catch (SQLException e) {
             gaussConn.rollback();
-            logger.error("同步表 {} 时发生错误", tableName, e);
+            logger.error("增量同步表 {} 时发生错误", tableName, e);
             throw e;
         }
     }
 
-    private Map<String, String> getTableStructure(Connection conn, String tableName)
+    private String queryMaxWatermark(Connection mysqlConn, String tableName, String column) throws SQLException {
+        try (Statement stmt = mysqlConn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(" + column + ") FROM " + tableName)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static void bindWatermark(PreparedStatement stmt, int index, String value, boolean integerWatermark)
             throws SQLException {
-        Map<String, String> columnTypes = new HashMap<>();
+        if (integerWatermark) {
+            stmt.setLong(index, Long.parseLong(value));
+        } else {
+            stmt.setString(index, value);
+        }
+    }
 
-        try (ResultSet rs = conn.getMetaData().getColumns(null, null, tableName, null)) {
-            while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME").toLowerCase();
-                String dataType = rs.getString("TYPE_NAME");
-                columnTypes.put(columnName, dataType);
+    /**
+     * 主键列在columns中的下标，按主键顺序排列，没有主键时返回空数组
+     */
+    private int[] findPrimaryKeyIndexes(SyncContext ctx, String tableName, List<ColumnInfo> columns) {
+        List<Integer> keyIndexes = new ArrayList<>();
+        for (String pkColumn : primaryKeyColumns(ctx, tableName)) {
+            int index = indexOfColumn(columns, pkColumn);
+            if (index >= 0) {
+                keyIndexes.add(index);
             }
         }
+        return keyIndexes.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-        return columnTypes;
+    /**
+     * 本次任务元数据快照中的主键列，按主键顺序排列
+     */
+    private List<String> primaryKeyColumns(SyncContext ctx, String tableName) {
+        SchemaMetadata.Table table = ctx.mysqlSchema.getTable(tableName);
+        return table == null ? Collections.emptyList() : table.getPrimaryKey();
     }
 
-    private String generateInsertSql(String tableName, Map<String, String> columnTypes) {
-        StringBuilder sql = new StringBuilder("INSERT INTO " + tableName + " (");
-        StringBuilder values = new StringBuilder(") VALUES (");
+    /**
+     * 启用检查点时的表同步：已完成的表直接跳过，未完成的表按登记的分片从各自的检查点继续复制
+     */
+    private void syncTableWithCheckpoints(String tableName, List<ColumnInfo> columns, Connection mysqlConn,
+                                          Connection gaussConn, DataBaseInfo mysqlDataBaseInfo,
+                                          DataBaseInfo gaussDataBaseInfo, SyncContext ctx) throws SQLException {
+        List<TableChunk> chunks = ctx.checkpointStore.load(gaussConn, tableName);
+        if (!chunks.isEmpty()) {
+            long committed = chunks.stream().mapToLong(chunk -> chunk.rowCount).sum();
+            recordProcessed(ctx, tableName, committed);
+            if (chunks.stream().allMatch(chunk -> chunk.finished)) {
+                logger.info("表 {} 已在之前的同步中完成，共 {} 条记录，跳过", tableName, committed);
+                return;
+            }
+            logger.info("表 {} 从检查点继续同步，已提交 {} 条记录", tableName, committed);
+        } else {
+            String keyColumn = findIntegerKey(ctx, tableName, columns);
+            chunks = keyColumn == null ? new ArrayList<>()
+                    : new ArrayList<>(splitKeyRanges(mysqlConn, tableName, keyColumn, shouldSplit(ctx, tableName) ? chunkCount : 1));
+            if (chunks.isEmpty()) {
+                // 没有整型主键或表为空时整表一次提交，提交时一并标记完成
+                chunks.add(new TableChunk(tableName, null, 0, 0));
+            }
+            ctx.checkpointStore.register(gaussConn, chunks);
+        }
 
-        boolean first = true;
-        for (String columnName : columnTypes.keySet()) {
-            if (!first) {
-                sql.append(", ");
-                values.append(", ");
+        List<TableChunk> pending = new ArrayList<>();
+        for (TableChunk chunk : chunks) {
+            if (!chunk.finished) {
+                pending.add(chunk);
             }
-            sql.append(columnName);
-            values.append("?");
-            first = false;
         }
+        if (pending.size() > 1) {
+            syncTableInChunks(tableName, columns, pending, mysqlConn, gaussConn, mysqlDataBaseInfo, gaussDataBaseInfo, ctx);
+            return;
+        }
+        TableChunk chunk = pending.get(0);
+        String selectSql = chunk.keyColumn == null ? generateSelectSql(tableName, columns)
+                : generateChunkSelectSql(ctx, tableName, columns, chunk.keyColumn);
+        copyRows(tableName, columns, selectSql, chunk, mysqlConn, gaussConn, gaussDataBaseInfo, ctx);
+        logger.info("表 {} 同步完成，共同步 {} 条记录", tableName, ctx.progress.tableProcessed(tableName));
+    }
 
-        return sql.toString() + values.toString() + ")";
+    /**
+     * 按主键范围分片并行复制一张表。未启用检查点时，任一分片失败会删除已提交的分片数据，保证表级别的全有或全无；
+     * 启用检查点时保留已提交的分片，下次从检查点继续。
+     * 调用线程使用已持有的连接处理分片，只额外借用workers - 1对连接，借不到连接的线程直接退出，由其余线程完成剩余分片
+     */
+    private void syncTableInChunks(String tableName, List<ColumnInfo> columns, List<TableChunk> chunks,
+                                   Connection mysqlConn, Connection gaussConn,
+                                   DataBaseInfo mysqlDataBaseInfo, DataBaseInfo gaussDataBaseInfo, SyncContext ctx)
+            throws SQLException {
+        String keyColumn = chunks.get(0).keyColumn;
+        String selectSql = generateChunkSelectSql(ctx, tableName, columns, keyColumn);
+        int workers = Math.min(ctx.chunkWorkers, chunks.size());
+        logger.info("表 {} 按主键 {} 切分为 {} 个分片，并行线程数: {}", tableName, keyColumn, chunks.size(), workers);
+
+        BlockingQueue<TableChunk> rangeQueue = new LinkedBlockingQueue<>(chunks);
+        List<TableChunk> completedRanges = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+        List<Future<?>> lanes = new ArrayList<>();
+        ExecutorService executor = workers > 1
+                ? Executors.newFixedThreadPool(workers - 1, new CustomizableThreadFactory("sync-chunk-")) : null;
+        try {
+            for (int i = 1; i < workers; i++) {
+                lanes.add(executor.submit(() -> {
+                    try (Connection laneMysqlConn = getConnection(mysqlDataBaseInfo);
+                         Connection laneGaussConn = getConnection(gaussDataBaseInfo)) {
+                        copyChunks(tableName, columns, selectSql, rangeQueue, completedRanges, failure,
+                                laneMysqlConn, laneGaussConn, gaussDataBaseInfo, ctx);
+                    } catch (SQLException e) {
+                        logger.warn("表 {} 分片线程获取数据库连接失败，剩余分片由其他线程处理", tableName, e);
+                    }
+                }));
+            }
+            copyChunks(tableName, columns, selectSql, rangeQueue, completedRanges, failure,
+                    mysqlConn, gaussConn, gaussDataBaseInfo, ctx);
+            for (Future<?> lane : lanes) {
+                try {
+                    lane.get();
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, new SQLException("表 " + tableName + " 分片同步失败", e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new SQLException("表 " + tableName + " 分片同步被中断", e));
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        if (failure.get() != null) {
+            if (ctx.checkpointStore == null) {
+                deleteCompletedRanges(tableName, new ArrayList<>(completedRanges), gaussDataBaseInfo);
+            }
+            throw failure.get();
+        }
+        logger.info("表 {} 同步完成，共同步 {} 条记录", tableName, ctx.progress.tableProcessed(tableName));
     }
 
+    /**
+     * 从分片队列中逐个取出分片复制，直到队列为空或有分片失败。已有分片失败时，尚未开始的分片不再执行
+     */
+    private void copyChunks(String tableName, List<ColumnInfo> columns, String selectSql, BlockingQueue<TableChunk> rangeQueue,
+                            List<TableChunk> completedRanges, AtomicReference<SQLException> failure,
+                            Connection mysqlConn, Connection gaussConn, DataBaseInfo gaussDataBaseInfo, SyncContext ctx) {
+        TableChunk range;
+        while (failure.get() == null && (range = rangeQueue.poll()) != null) {
+            try {
+                long copied = copyRows(tableName, columns, selectSql, range, mysqlConn, gaussConn, gaussDataBaseInfo, ctx);
+                logger.info("表 {} 分片 [{} - {}] 同步完成，共同步 {} 条记录", tableName, range.start, range.end, copied);
+                completedRanges.add(range);
+            } catch (SQLException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new SQLException("表 " + tableName + " 分片同步失败", e));
+            }
+        }
+    }
 
-    private Connection getConnection(DataBaseInfo dataBaseInfo) throws SQLException {
-        return DriverManager.getConnection(
-                dataBaseInfo.getUrl(),
-                dataBaseInfo.getUser(),
-                dataBaseInfo.getPassword()
-        );
-    }
-
-    private static List<String> getTables(DatabaseMetaData metaData) throws SQLException {
-        List<String> tables = new ArrayList<>();
-        ResultSet rs = metaData.getTables(null, null, "%", new String[]{"TABLE"});
-        while (rs.next()) {
-            tables.add(rs.getString("TABLE_NAME"));
-        }
-        return tables;
-    }
-
-    private static void initializeTypeConverters() {
-        // 数值类型转换
-        TYPE_CONVERTERS.put("TINYINT", new TypeConverter() {
-            @Override
-            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                int value = rs.getInt(columnIndex);
-                return rs.wasNull() ? null : value;
-            }
-
-            @Override
-            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
-                if (value == null) {
-                    stmt.setNull(parameterIndex, Types.SMALLINT);
-                } else if (value instanceof String) {
-                    stmt.setInt(parameterIndex, Integer.parseInt((String) value));
-                } else {
-                    stmt.setInt(parameterIndex, ((Number) value).intValue());
+    private void deleteCompletedRanges(String tableName, List<TableChunk> completedRanges, DataBaseInfo gaussDataBaseInfo) {
+        if (completedRanges.isEmpty()) {
+            return;
+        }
+        String deleteSql = "DELETE FROM " + tableName + " WHERE " + completedRanges.get(0).keyColumn + " >= ? AND "
+                + completedRanges.get(0).keyColumn + " <= ?";
+        try (Connection gaussConn = getConnection(gaussDataBaseInfo);
+             PreparedStatement stmt = gaussConn.prepareStatement(deleteSql)) {
+            for (TableChunk range : completedRanges) {
+                stmt.setLong(1, range.start);
+                stmt.setLong(2, range.end);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            logger.info("表 {} 已清理 {} 个已提交的分片", tableName, completedRanges.size());
+        } catch (SQLException e) {
+            logger.error("表 {} 清理已提交分片失败，目标表中可能残留部分数据", tableName, e);
+        }
+    }
+
+    /**
+     * 复制一个分片并提交，chunk为空时复制整张表。启用检查点时按提交间隔分段提交，
+     * 每次提交在同一事务内写入该分片的检查点
+     *
+     * @return 复制的记录数
+     */
+    private long copyRows(String tableName, List<ColumnInfo> columns, String selectSql, TableChunk chunk,
+                          Connection mysqlConn, Connection gaussConn, DataBaseInfo gaussDataBaseInfo, SyncContext ctx)
+            throws SQLException {
+        boolean checkpointing = ctx.checkpointStore != null && chunk != null;
+        if (pipelineEnabled && !checkpointing) {
+            return copyRowsPipelined(tableName, columns, selectSql, chunk, mysqlConn, gaussConn, gaussDataBaseInfo, ctx);
+        }
+        TaskControl control = ctx.control;
+        try (PreparedStatement mysqlStmt = prepareSelect(mysqlConn, selectSql);
+             TaskControl.Registration ignored = control.register(mysqlStmt);
+             RowWriter writer = createRowWriter(ctx, tableName, columns, gaussConn)) {
+            if (chunk != null && chunk.keyColumn != null) {
+                mysqlStmt.setLong(1, chunk.resumeFrom());
+                mysqlStmt.setLong(2, chunk.end);
+            }
+
+            gaussConn.setAutoCommit(false);
+            BatchTuner tuner = batchTuner(ctx, tableName);
+            int currentBatchSize = tuner.batchSize();
+            int batchCount = 0;
+            long copied = 0;
+            // 检查点只记录有序主键的位置，整表分片在结束时一次提交
+            int keyIndex = checkpointing && chunk.keyColumn != null ? indexOfColumn(columns, chunk.keyColumn) : -1;
+            long committedRows = checkpointing ? chunk.rowCount : 0;
+            int uncommittedBatches = 0;
+            Long lastKey = null;
+
+            // 非流式读取时结果集在executeQuery中一次取完，计入第一个批次的读取耗时
+            long fetchStart = System.nanoTime();
+            long fetchNanos = 0;
+            try (ResultSet rs = mysqlStmt.executeQuery()) {
+                while (rs.next()) {
+                    fetchNanos += System.nanoTime() - fetchStart;
+                    writer.addRow(rs);
+                    if (keyIndex >= 0) {
+                        lastKey = rs.getLong(keyIndex + 1);
+                    }
+                    batchCount++;
+                    copied++;
+
+                    if (batchCount >= currentBatchSize || writer.bufferedBytes() >= batchMaxBytes) {
+                        metrics.recordFetch(ctx.taskId, tableName, fetchNanos);
+                        fetchNanos = 0;
+                        flushBatch(ctx, tableName, writer, batchCount, tuner);
+                        currentBatchSize = tuner.batchSize();
+                        recordProcessed(ctx, tableName, batchCount);
+                        batchCount = 0;
+                        displayProgress(ctx, tableName);
+
+                        if (keyIndex >= 0 && ++uncommittedBatches >= commitInterval) {
+                            writer.finish();
+                            saveCheckpoint(ctx, gaussConn, chunk, lastKey, committedRows + copied, false);
+                            gaussConn.commit();
+                            uncommittedBatches = 0;
+                        }
+                        // 暂停在批次之间，已提交的检查点之后的数据在取消时回滚
+                        control.checkpoint();
+                    }
+                    fetchStart = System.nanoTime();
                 }
+                fetchNanos += System.nanoTime() - fetchStart;
+            }
+            if (fetchNanos > 0) {
+                metrics.recordFetch(ctx.taskId, tableName, fetchNanos);
+            }
+
+            writer.finish();
+            if (batchCount > 0) {
+                recordProcessed(ctx, tableName, batchCount);
+                displayProgress(ctx, tableName);
+            }
+
+            if (checkpointing) {
+                saveCheckpoint(ctx, gaussConn, chunk, lastKey, committedRows + copied, true);
+            }
+            gaussConn.commit();
+            return copied;
+
+        } catch (SQLException e) {
+            gaussConn.rollback();
+            logger.error("同步表 {} 时发生错误", tableName, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 流水线复制：当前线程读取并转换数据，按批次放入有界队列，写入线程从队列取批次写入高斯，
+     * 读写互相重叠。所有写入线程都成功后才依次提交各自的连接，提交前任一失败则全部回滚。
+     * 多个连接的提交不是原子的，部分连接已提交后其余提交失败时删除已提交的数据：分片删除该主键范围，
+     * 整表复制只在复制前目标表为空时删除整表，否则残留的数据需要手工清理
+     */
+    private long copyRowsPipelined(String tableName, List<ColumnInfo> columns, String selectSql, TableChunk range,
+                                   Connection mysqlConn, Connection gaussConn, DataBaseInfo gaussDataBaseInfo,
+                                   SyncContext ctx) throws SQLException {
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(pipelineQueueCapacity);
+        AtomicInteger queueDepth = metrics.queueDepth(ctx.taskId, tableName);
+        AtomicReference<Exception> writeFailure = new AtomicReference<>();
+        List<Connection> writerConns = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(ctx.pipelineWriters, new CustomizableThreadFactory("sync-writer-"));
+        long copied = 0;
+        try {
+            // 整表复制时记录目标表是否为空，用于部分提交失败后的清理
+            boolean targetWasEmpty = range == null && ctx.pipelineWriters > 1 && isTableEmpty(gaussConn, tableName);
+            writerConns.add(gaussConn);
+            for (int i = 1; i < ctx.pipelineWriters; i++) {
+                writerConns.add(getConnection(gaussDataBaseInfo));
+            }
+            List<Future<?>> writers = new ArrayList<>();
+            for (Connection writerConn : writerConns) {
+                writerConn.setAutoCommit(false);
+                writers.add(executor.submit(() -> drainBatches(tableName, columns, writerConn, queue, writeFailure, ctx)));
             }
-        });
 
-        // BLOB转bytea
-        TYPE_CONVERTERS.put("BLOB", new TypeConverter() {
-            @Override
-            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                Blob blob = rs.getBlob(columnIndex);
-                if (blob == null) return null;
-                return blob.getBytes(1, (int) blob.length());
-            }
-
-            @Override
-            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
-                if (value == null) {
-                    stmt.setNull(parameterIndex, Types.BINARY);
-                } else {
-                    stmt.setBytes(parameterIndex, (byte[]) value);
+            SQLException readFailure = null;
+            TaskControl control = ctx.control;
+            try (PreparedStatement mysqlStmt = prepareSelect(mysqlConn, selectSql);
+                 TaskControl.Registration ignored = control.register(mysqlStmt)) {
+                if (range != null) {
+                    mysqlStmt.setLong(1, range.start);
+                    mysqlStmt.setLong(2, range.end);
+                }
+                long fetchStart = System.nanoTime();
+                try (ResultSet rs = mysqlStmt.executeQuery()) {
+                    BatchTuner tuner = batchTuner(ctx, tableName);
+                    List<Object[]> batch = new ArrayList<>(tuner.batchSize());
+                    long batchBytes = 0;
+                    while (writeFailure.get() == null && rs.next()) {
+                        Object[] values = ColumnInfo.readRow(rs, columns, new Object[columns.size()]);
+                        batch.add(values);
+                        batchBytes += ColumnInfo.sizeOf(values);
+                        copied++;
+                        if (batch.size() >= tuner.batchSize() || batchBytes >= batchMaxBytes) {
+                            metrics.recordFetch(ctx.taskId, tableName, System.nanoTime() - fetchStart);
+                            queue.put(batch);
+                            queueDepth.set(queue.size());
+                            batch = new ArrayList<>(tuner.batchSize());
+                            batchBytes = 0;
+                            control.checkpoint();
+                            fetchStart = System.nanoTime();
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        metrics.recordFetch(ctx.taskId, tableName, System.nanoTime() - fetchStart);
+                        queue.put(batch);
+                    }
+                }
+            } catch (SQLException e) {
+                readFailure = e;
+            } finally {
+                for (int i = 0; i < writerConns.size(); i++) {
+                    queue.put(END_OF_DATA);
                 }
             }
-        });
 
-        // VARCHAR等字符串类型
-        TypeConverter stringConverter = new TypeConverter() {
-            @Override
-            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                return rs.getString(columnIndex);
+            // 等待写入线程全部退出后才能提交或回滚它们的连接
+            for (Future<?> writer : writers) {
+                writer.get();
             }
+            if (readFailure != null) {
+                throw readFailure;
+            }
+            if (writeFailure.get() != null) {
+                throw writeFailure.get();
+            }
+            int committedWriters = 0;
+            try {
+                for (Connection writerConn : writerConns) {
+                    writerConn.commit();
+                    committedWriters++;
+                }
+            } catch (SQLException e) {
+                if (committedWriters > 0) {
+                    deletePartialCommit(tableName, range, targetWasEmpty, gaussDataBaseInfo);
+                }
+                throw e;
+            }
+            return copied;
 
-            @Override
-            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
-                if (value == null) {
-                    stmt.setNull(parameterIndex, Types.VARCHAR);
-                } else {
-                    stmt.setString(parameterIndex, value.toString());
+        } catch (Exception e) {
+            for (Connection writerConn : writerConns) {
+                try {
+                    writerConn.rollback();
+                } catch (SQLException rollbackEx) {
+                    logger.error("表 {} 回滚写入连接失败", tableName, rollbackEx);
                 }
             }
-        };
-        TYPE_CONVERTERS.put("VARCHAR", stringConverter);
-        TYPE_CONVERTERS.put("CHAR", stringConverter);
-        TYPE_CONVERTERS.put("TEXT", stringConverter);
-
-        // 数值类型
-        TypeConverter numberConverter = new TypeConverter() {
-            @Override
-            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                BigDecimal value = rs.getBigDecimal(columnIndex);
-                return rs.wasNull() ? null : value;
-            }
-
-            @Override
-            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
-                if (value == null) {
-                    stmt.setNull(parameterIndex, Types.NUMERIC);
-                } else if (value instanceof String) {
-                    stmt.setBigDecimal(parameterIndex, new BigDecimal((String) value));
-                } else if (value instanceof BigDecimal) {
-                    stmt.setBigDecimal(parameterIndex, (BigDecimal) value);
-                } else {
-                    stmt.setBigDecimal(parameterIndex, new BigDecimal(value.toString()));
+            logger.error("同步表 {} 时发生错误", tableName, e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e instanceof SQLException ? (SQLException) e : new SQLException("表 " + tableName + " 流水线同步失败", e);
+        } finally {
+            executor.shutdownNow();
+            queueDepth.set(0);
+            for (int i = 1; i < writerConns.size(); i++) {
+                try {
+                    writerConns.get(i).close();
+                } catch (SQLException e) {
+                    logger.error("关闭写入连接失败", e);
+                }
+            }
+        }
+    }
+
+    private boolean isTableEmpty(Connection gaussConn, String tableName) throws SQLException {
+        try (Statement stmt = gaussConn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + tableName + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    /**
+     * 流水线的部分写入连接已提交、其余提交失败时，删除已提交的数据，使重新同步不会遇到重复数据
+     */
+    private void deletePartialCommit(String tableName, TableChunk range, boolean targetWasEmpty,
+                                     DataBaseInfo gaussDataBaseInfo) {
+        if (range != null) {
+            deleteCompletedRanges(tableName, Collections.singletonList(range), gaussDataBaseInfo);
+            return;
+        }
+        if (!targetWasEmpty) {
+            logger.error("表 {} 部分写入连接已提交，复制前目标表不为空，无法只删除本次写入的数据，需要手工清理", tableName);
+            return;
+        }
+        try (Connection conn = getConnection(gaussDataBaseInfo);
+             Statement stmt = conn.createStatement()) {
+            int deleted = stmt.executeUpdate("DELETE FROM " + tableName);
+            logger.info("表 {} 部分写入连接提交失败，已删除已提交的 {} 条记录", tableName, deleted);
+        } catch (SQLException e) {
+            logger.error("表 {} 清理部分提交的数据失败，目标表中可能残留部分数据", tableName, e);
+        }
+    }
+
+    /**
+     * 写入线程：从队列取批次写入直到收到结束标记。出错后继续取出并丢弃批次直到结束标记，包括创建写入器失败
+     * 和Error，读取线程不会阻塞在满队列上
+     */
+    private void drainBatches(String tableName, List<ColumnInfo> columns, Connection writerConn,
+                              BlockingQueue<List<Object[]>> queue, AtomicReference<Exception> writeFailure,
+                              SyncContext ctx) {
+        RowWriter writer = null;
+        boolean endReached = false;
+        try {
+            writer = createRowWriter(ctx, tableName, columns, writerConn);
+            BatchTuner tuner = batchTuner(ctx, tableName);
+            AtomicInteger queueDepth = metrics.queueDepth(ctx.taskId, tableName);
+            List<Object[]> batch;
+            while ((batch = queue.take()) != END_OF_DATA) {
+                queueDepth.set(queue.size());
+                if (writeFailure.get() != null) {
+                    continue;
+                }
+                try {
+                    for (Object[] values : batch) {
+                        writer.addRow(values);
+                    }
+                    flushBatch(ctx, tableName, writer, batch.size(), tuner);
+                    recordProcessed(ctx, tableName, batch.size());
+                    displayProgress(ctx, tableName);
+                } catch (SQLException | RuntimeException e) {
+                    writeFailure.compareAndSet(null, e);
                 }
             }
-        };
-        TYPE_CONVERTERS.put("DECIMAL", numberConverter);
-        TYPE_CONVERTERS.put("NUMERIC", numberConverter);
-
-        // 日期时间类型
-        TYPE_CONVERTERS.put("DATETIME", new TypeConverter() {
-            @Override
-            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                return rs.getTimestamp(columnIndex);
-            }
-
-            @Override
-            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
-                if (value == null) {
-                    stmt.setNull(parameterIndex, Types.TIMESTAMP);
-                } else if (value instanceof String) {
-                    stmt.setTimestamp(parameterIndex, Timestamp.valueOf((String) value));
-                } else {
-                    stmt.setTimestamp(parameterIndex, (Timestamp) value);
+            endReached = true;
+            if (writeFailure.get() == null) {
+                writer.finish();
+            }
+        } catch (SQLException | RuntimeException e) {
+            writeFailure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            writeFailure.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+        } catch (Error e) {
+            writeFailure.compareAndSet(null, new SQLException("表 " + tableName + " 写入线程异常终止", e));
+            throw e;
+        } finally {
+            if (!endReached && !Thread.currentThread().isInterrupted()) {
+                discardUntilEnd(queue);
+            }
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (SQLException e) {
+                    logger.error("表 {} 关闭写入器失败", tableName, e);
                 }
             }
-        });
+        }
     }
 
+    private static void discardUntilEnd(BlockingQueue<List<Object[]>> queue) {
+        try {
+            while (queue.take() != END_OF_DATA) {
+                // 丢弃失败后读取线程仍在放入的批次
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-    // 列信息类
-    private static class ColumnInfo {
-        String name;
-        String mysqlType;
-        String gaussType;
-        TypeConverter converter;
+    private BatchTuner batchTuner(SyncContext ctx, String tableName) {
+        return ctx.batchTuners.computeIfAbsent(tableName, table -> new BatchTuner(table, batchAutoEnabled, batchSize,
+                batchAutoMin, batchAutoMax, batchAutoStep, batchTargetLatencyMs));
+    }
 
-        public ColumnInfo(String name, String mysqlType, String gaussType, TypeConverter converter) {
-            this.name = name;
-            this.mysqlType = mysqlType;
-            this.gaussType = gaussType;
-            this.converter = converter;
+    /**
+     * 发送一个批次并把耗时反馈给批大小和并发写入数的调整
+     */
+    private void flushBatch(SyncContext ctx, String tableName, RowWriter writer, int rows, BatchTuner tuner)
+            throws SQLException {
+        long bytes = writer.bufferedBytes();
+        WriteConcurrencyLimiter limiter = ctx.writeLimiter;
+        if (limiter != null) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("等待写入许可时被中断", e);
+            }
+        }
+        boolean congested = false;
+        long start = System.nanoTime();
+        try {
+            writer.flush();
+            long elapsed = System.nanoTime() - start;
+            congested = tuner.record(rows, bytes, elapsed);
+            metrics.recordBatch(ctx.taskId, tableName, bytes, elapsed);
+        } finally {
+            if (limiter != null) {
+                limiter.release(congested);
+            }
         }
     }
 
-    private List<ColumnInfo> getTableColumns(Connection conn, String tableName) throws SQLException {
-        List<ColumnInfo> columns = new ArrayList<>();
+    private RowWriter createRowWriter(SyncContext ctx, String tableName, List<ColumnInfo> columns, Connection gaussConn)
+            throws SQLException {
+        if (tolerantEnabled) {
+            return new TolerantRowWriter(gaussConn, tableName, columns,
+                    () -> createLoaderWriter(tableName, columns, gaussConn), deadLetterFile(ctx, tableName));
+        }
+        return createLoaderWriter(tableName, columns, gaussConn);
+    }
 
-        try (ResultSet rs = conn.getMetaData().getColumns(null, null, tableName, null)) {
-            while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME");
-                String mysqlType = rs.getString("TYPE_NAME").toUpperCase();
+    private DeadLetterFile deadLetterFile(SyncContext ctx, String tableName) {
+        return ctx.deadLetterFiles.computeIfAbsent(tableName, table -> new DeadLetterFile(new File(deadLetterDir), table));
+    }
+
+    private void closeDeadLetterFiles(SyncContext ctx) {
+        for (DeadLetterFile file : ctx.deadLetterFiles.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.error("关闭死信文件 {} 失败", file.getFile(), e);
+            }
+        }
+        ctx.deadLetterFiles.clear();
+    }
+
+    private RowWriter createLoaderWriter(String tableName, List<ColumnInfo> columns, Connection gaussConn)
+            throws SQLException {
+        LoaderType tableLoader = tableLoaders.getOrDefault(tableName.toLowerCase(), loader);
+        if (tableLoader == LoaderType.COPY) {
+            return new CopyRowWriter(gaussConn, tableName, columns, copyFormat);
+        }
+        if (tableLoader == LoaderType.MULTI_VALUES) {
+            return new MultiValuesRowWriter(gaussConn, tableName, columns, batchSize);
+        }
+        return new InsertRowWriter(gaussConn, tableName, columns);
+    }
+
+    private void saveCheckpoint(SyncContext ctx, Connection gaussConn, TableChunk chunk, Long lastKey, long rowCount,
+                                boolean finished)
+            throws SQLException {
+        if (lastKey != null) {
+            chunk.lastKey = lastKey;
+        }
+        chunk.rowCount = rowCount;
+        chunk.finished = finished;
+        ctx.checkpointStore.save(gaussConn, chunk);
+    }
+
+    private static int indexOfColumn(List<ColumnInfo> columns, String columnName) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).name.equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-                // 获取对应的高斯类型
-                String gaussType = DataTypeMappings.getDataTypeMappings().getOrDefault(mysqlType.toUpperCase(), mysqlType);
+    private void recordProcessed(SyncContext ctx, String tableName, long count) {
+        ctx.progress.processedRecords.add(count);
+        ctx.progress.table(tableName).processed.add(count);
+        metrics.recordRows(ctx.taskId, tableName, count);
+    }
 
-                // 获取类型转换器
-                TypeConverter converter = TYPE_CONVERTERS.getOrDefault(mysqlType,
-                        new TypeConverter() {
-                            @Override
-                            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
-                                return rs.getObject(columnIndex);
-                            }
+    private boolean shouldSplit(SyncContext ctx, String tableName) {
+        return chunkCount > 1 && ctx.progress.tableRecords(tableName) >= chunkMinRows;
+    }
 
-                            @Override
-                            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value)
-                                    throws SQLException {
-                                stmt.setObject(parameterIndex, value);
-                            }
-                        });
+    private String generateChunkSelectSql(SyncContext ctx, String tableName, List<ColumnInfo> columns, String keyColumn) {
+        String sql = generateSelectSql(tableName, columns) + " WHERE " + keyColumn + " >= ? AND " + keyColumn + " <= ?";
+        // 检查点按主键顺序记录进度
+        return ctx.checkpointStore != null ? sql + " ORDER BY " + keyColumn : sql;
+    }
 
-                columns.add(new ColumnInfo(columnName, mysqlType, gaussType, converter));
+    /**
+     * 查找单列整型主键，没有时返回null
+     */
+    private String findIntegerKey(SyncContext ctx, String tableName, List<ColumnInfo> columns) {
+        List<String> pkColumns = primaryKeyColumns(ctx, tableName);
+        if (pkColumns.size() != 1) {
+            logger.info("表 {} 没有单列主键，不按主键分片", tableName);
+            return null;
+        }
+        String pkColumn = pkColumns.get(0);
+        boolean integerKey = columns.stream()
+                .anyMatch(c -> c.name.equalsIgnoreCase(pkColumn) && INTEGER_KEY_TYPES.contains(c.mysqlType));
+        if (!integerKey) {
+            logger.info("表 {} 的主键 {} 不是整型，不按主键分片", tableName, pkColumn);
+            return null;
+        }
+        return pkColumn;
+    }
+
+    /**
+     * 按主键MIN/MAX切分为count个闭区间，表为空时返回空列表
+     */
+    private List<TableChunk> splitKeyRanges(Connection mysqlConn, String tableName, String pkColumn, int count)
+            throws SQLException {
+        long min;
+        long max;
+        try (Statement stmt = mysqlConn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + pkColumn + "), MAX(" + pkColumn + ") FROM " + tableName)) {
+            if (!rs.next()) {
+                return Collections.emptyList();
             }
+            min = rs.getLong(1);
+            if (rs.wasNull()) {
+                return Collections.emptyList();
+            }
+            max = rs.getLong(2);
+        }
+
+        long step;
+        try {
+            step = Math.subtractExact(max, min) / count + 1;
+        } catch (ArithmeticException e) {
+            logger.warn("表 {} 主键范围过大，不进行分片", tableName);
+            return Collections.emptyList();
+        }
+        List<TableChunk> ranges = new ArrayList<>();
+        for (long start = min; start <= max; ) {
+            long end = max - start < step ? max : start + step - 1;
+            ranges.add(new TableChunk(tableName, pkColumn, start, end));
+            if (end == max) {
+                break;
+            }
+            start = end + 1;
+        }
+        return ranges;
+    }
+
+    /**
+     * 按读取方式创建查询语句，STREAM模式下结果集未关闭前该连接不能执行其他语句
+     */
+    private PreparedStatement prepareSelect(Connection mysqlConn, String selectSql) throws SQLException {
+        PreparedStatement stmt = mysqlConn.prepareStatement(selectSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (readMode == ReadMode.STREAM) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        } else if (readMode == ReadMode.CURSOR) {
+            stmt.setFetchSize(fetchSize);
+        }
+        return stmt;
+    }
+
+    private Connection getConnection(DataBaseInfo dataBaseInfo) throws SQLException {
+        return dataSourceManager.getConnection(dataBaseInfo);
+    }
+
+    private List<ColumnInfo> getTableColumns(SyncContext ctx, String tableName) throws SQLException {
+        List<ColumnInfo> columns = new ArrayList<>();
+
+        SchemaMetadata.Table table = ctx.mysqlSchema.getTable(tableName);
+        if (table == null) {
+            throw new SQLException("MySQL中不存在表: " + tableName);
+        }
+        for (SchemaMetadata.Column column : table.getColumns()) {
+            String columnName = column.getName();
+            String mysqlType = column.getTypeName().toUpperCase();
+
+            // 获取对应的高斯类型
+            String gaussType = DataTypeMappings.getDataTypeMappings().getOrDefault(mysqlType.toUpperCase(), mysqlType);
+
+            // 获取类型转换器
+            TypeConverter converter = TypeConverters.forType(mysqlType);
+
+            columns.add(new ColumnInfo(columnName, mysqlType, gaussType, converter));
         }
 
         return columns;
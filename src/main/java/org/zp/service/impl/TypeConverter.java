@@ -0,0 +1,30 @@
+package org.zp.service.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * MySQL到高斯的列值转换器
+ *
+ * @Author zp
+ * @Date 2024/10/21 14:02
+ */
+
+interface TypeConverter {
+
+    Object convert(ResultSet rs, int columnIndex) throws SQLException;
+
+    void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException;
+
+    /**
+     * 把结果集当前行的一列直接写入语句参数，基本类型的转换器覆盖此方法以避免装箱。
+     * 返回写入值的估算字节数，用于按缓存字节数提前提交批次
+     */
+    default long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+            throws SQLException {
+        Object value = convert(rs, columnIndex);
+        setParameter(stmt, parameterIndex, value);
+        return TypeConverters.sizeOf(value);
+    }
+}
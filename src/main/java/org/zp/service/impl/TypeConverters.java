@@ -0,0 +1,360 @@
+package org.zp.service.impl;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按MySQL类型名注册的列转换器。整数和浮点类型在transfer中直接使用基本类型的getXxx/setXxx，
+ * 只有INSERT写入方式调用transfer，不产生装箱对象；COPY、多行VALUES、流水线等其他写入方式经convert读取为对象
+ *
+ * @Author zp
+ * @Date 2024/10/22 09:30
+ */
+
+final class TypeConverters {
+
+    private static final Map<String, TypeConverter> CONVERTERS = new HashMap<>();
+
+    /**
+     * 二进制大对象类型，COPY写入时从结果集的二进制流直接编码
+     */
+    private static final Set<String> BINARY_LOB_TYPES = new HashSet<>(Arrays.asList(
+            "TINYBLOB", "BLOB", "MEDIUMBLOB", "LONGBLOB"));
+
+    /**
+     * 定长值按8字节估算
+     */
+    private static final long PRIMITIVE_SIZE = 8;
+
+    /**
+     * 未注册类型使用getObject/setObject
+     */
+    static final TypeConverter OBJECT_CONVERTER = new TypeConverter() {
+        @Override
+        public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getObject(columnIndex);
+        }
+
+        @Override
+        public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+            stmt.setObject(parameterIndex, value);
+        }
+    };
+
+    static {
+        // 小整数类型，高斯端为SMALLINT/INTEGER
+        TypeConverter intConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                int value = rs.getInt(columnIndex);
+                return rs.wasNull() ? null : value;
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.INTEGER);
+                } else if (value instanceof String) {
+                    stmt.setInt(parameterIndex, Integer.parseInt((String) value));
+                } else {
+                    stmt.setInt(parameterIndex, ((Number) value).intValue());
+                }
+            }
+
+            @Override
+            public long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+                    throws SQLException {
+                int value = rs.getInt(columnIndex);
+                if (rs.wasNull()) {
+                    stmt.setNull(parameterIndex, Types.INTEGER);
+                } else {
+                    stmt.setInt(parameterIndex, value);
+                }
+                return PRIMITIVE_SIZE;
+            }
+        };
+        CONVERTERS.put("TINYINT", intConverter);
+        CONVERTERS.put("SMALLINT", intConverter);
+        CONVERTERS.put("MEDIUMINT", intConverter);
+        CONVERTERS.put("INT", intConverter);
+        CONVERTERS.put("INTEGER", intConverter);
+        CONVERTERS.put("TINYINT UNSIGNED", intConverter);
+        CONVERTERS.put("SMALLINT UNSIGNED", intConverter);
+        CONVERTERS.put("MEDIUMINT UNSIGNED", intConverter);
+
+        // BIGINT以及超出int范围的INT UNSIGNED
+        TypeConverter longConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                long value = rs.getLong(columnIndex);
+                return rs.wasNull() ? null : value;
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.BIGINT);
+                } else if (value instanceof String) {
+                    stmt.setLong(parameterIndex, Long.parseLong((String) value));
+                } else {
+                    stmt.setLong(parameterIndex, ((Number) value).longValue());
+                }
+            }
+
+            @Override
+            public long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+                    throws SQLException {
+                long value = rs.getLong(columnIndex);
+                if (rs.wasNull()) {
+                    stmt.setNull(parameterIndex, Types.BIGINT);
+                } else {
+                    stmt.setLong(parameterIndex, value);
+                }
+                return PRIMITIVE_SIZE;
+            }
+        };
+        CONVERTERS.put("BIGINT", longConverter);
+        CONVERTERS.put("INT UNSIGNED", longConverter);
+        CONVERTERS.put("INTEGER UNSIGNED", longConverter);
+
+        CONVERTERS.put("FLOAT", new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                float value = rs.getFloat(columnIndex);
+                return rs.wasNull() ? null : value;
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.REAL);
+                } else if (value instanceof String) {
+                    stmt.setFloat(parameterIndex, Float.parseFloat((String) value));
+                } else {
+                    stmt.setFloat(parameterIndex, ((Number) value).floatValue());
+                }
+            }
+
+            @Override
+            public long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+                    throws SQLException {
+                float value = rs.getFloat(columnIndex);
+                if (rs.wasNull()) {
+                    stmt.setNull(parameterIndex, Types.REAL);
+                } else {
+                    stmt.setFloat(parameterIndex, value);
+                }
+                return PRIMITIVE_SIZE;
+            }
+        });
+
+        CONVERTERS.put("DOUBLE", new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                double value = rs.getDouble(columnIndex);
+                return rs.wasNull() ? null : value;
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.DOUBLE);
+                } else if (value instanceof String) {
+                    stmt.setDouble(parameterIndex, Double.parseDouble((String) value));
+                } else {
+                    stmt.setDouble(parameterIndex, ((Number) value).doubleValue());
+                }
+            }
+
+            @Override
+            public long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+                    throws SQLException {
+                double value = rs.getDouble(columnIndex);
+                if (rs.wasNull()) {
+                    stmt.setNull(parameterIndex, Types.DOUBLE);
+                } else {
+                    stmt.setDouble(parameterIndex, value);
+                }
+                return PRIMITIVE_SIZE;
+            }
+        });
+
+        // BLOB转bytea。getBlob().getBytes()会在驱动已读取的行数据之外再复制一份，这里直接取字节数组。
+        // MySQL驱动已把整行读入内存，流式绑定并不能减少内存占用，逐行写入同样使用getBytes/setBytes
+        TypeConverter blobConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                return rs.getBytes(columnIndex);
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.BINARY);
+                } else {
+                    stmt.setBytes(parameterIndex, (byte[]) value);
+                }
+            }
+        };
+        for (String type : BINARY_LOB_TYPES) {
+            CONVERTERS.put(type, blobConverter);
+        }
+
+        // VARCHAR等字符串类型
+        TypeConverter stringConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                return rs.getString(columnIndex);
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.VARCHAR);
+                } else {
+                    stmt.setString(parameterIndex, value.toString());
+                }
+            }
+        };
+        CONVERTERS.put("VARCHAR", stringConverter);
+        CONVERTERS.put("CHAR", stringConverter);
+        // TEXT类型直接使用getString/setString：MySQL驱动已把整行读入内存，高斯驱动的setCharacterStream也会先读成字符串，
+        // 字符流并不能减少内存占用。单个值受高斯text类型1GB上限的限制，超过该大小的LONGTEXT值无法迁移
+        CONVERTERS.put("TINYTEXT", stringConverter);
+        CONVERTERS.put("TEXT", stringConverter);
+        CONVERTERS.put("MEDIUMTEXT", stringConverter);
+        CONVERTERS.put("LONGTEXT", stringConverter);
+
+        // 定点数，BigDecimal对象无法避免
+        TypeConverter numberConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                BigDecimal value = rs.getBigDecimal(columnIndex);
+                return rs.wasNull() ? null : value;
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.NUMERIC);
+                } else if (value instanceof String) {
+                    stmt.setBigDecimal(parameterIndex, new BigDecimal((String) value));
+                } else if (value instanceof BigDecimal) {
+                    stmt.setBigDecimal(parameterIndex, (BigDecimal) value);
+                } else {
+                    stmt.setBigDecimal(parameterIndex, new BigDecimal(value.toString()));
+                }
+            }
+
+            @Override
+            public long transfer(ResultSet rs, int columnIndex, PreparedStatement stmt, int parameterIndex)
+                    throws SQLException {
+                BigDecimal value = rs.getBigDecimal(columnIndex);
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.NUMERIC);
+                    return 0;
+                }
+                stmt.setBigDecimal(parameterIndex, value);
+                return PRIMITIVE_SIZE;
+            }
+        };
+        CONVERTERS.put("DECIMAL", numberConverter);
+        CONVERTERS.put("NUMERIC", numberConverter);
+        CONVERTERS.put("BIGINT UNSIGNED", numberConverter);
+
+        // 日期时间类型
+        TypeConverter timestampConverter = new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                return rs.getTimestamp(columnIndex);
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.TIMESTAMP);
+                } else if (value instanceof String) {
+                    stmt.setTimestamp(parameterIndex, Timestamp.valueOf((String) value));
+                } else {
+                    stmt.setTimestamp(parameterIndex, (Timestamp) value);
+                }
+            }
+        };
+        CONVERTERS.put("DATETIME", timestampConverter);
+        CONVERTERS.put("TIMESTAMP", timestampConverter);
+
+        CONVERTERS.put("DATE", new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                return rs.getDate(columnIndex);
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.DATE);
+                } else if (value instanceof String) {
+                    stmt.setDate(parameterIndex, Date.valueOf((String) value));
+                } else {
+                    stmt.setDate(parameterIndex, (Date) value);
+                }
+            }
+        });
+
+        CONVERTERS.put("TIME", new TypeConverter() {
+            @Override
+            public Object convert(ResultSet rs, int columnIndex) throws SQLException {
+                return rs.getTime(columnIndex);
+            }
+
+            @Override
+            public void setParameter(PreparedStatement stmt, int parameterIndex, Object value) throws SQLException {
+                if (value == null) {
+                    stmt.setNull(parameterIndex, Types.TIME);
+                } else if (value instanceof String) {
+                    stmt.setTime(parameterIndex, Time.valueOf((String) value));
+                } else {
+                    stmt.setTime(parameterIndex, (Time) value);
+                }
+            }
+        });
+    }
+
+    private TypeConverters() {
+    }
+
+    static TypeConverter forType(String mysqlType) {
+        return CONVERTERS.getOrDefault(mysqlType, OBJECT_CONVERTER);
+    }
+
+    static boolean isBinaryLob(String mysqlType) {
+        return BINARY_LOB_TYPES.contains(mysqlType);
+    }
+
+    /**
+     * 估算一个列值占用的字节数，字符串按UTF-16计算
+     */
+    static long sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof CharSequence) {
+            return 2L * ((CharSequence) value).length();
+        }
+        return PRIMITIVE_SIZE;
+    }
+}
@@ -0,0 +1,137 @@
+package org.zp.service.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按主键写入：先批量UPDATE，更新行数为0的行再批量INSERT，重复写入同一行结果不变。
+ * 同一批次中相同主键只保留最后一个版本
+ *
+ * @Author zp
+ * @Date 2024/10/24 09:40
+ */
+
+class UpsertRowWriter implements RowWriter {
+
+    private final List<ColumnInfo> columns;
+    private final int[] keyIndexes;
+    private final PreparedStatement updateStmt;
+    private final PreparedStatement insertStmt;
+    private final Map<List<Object>, Object[]> pendingRows = new LinkedHashMap<>();
+    private long bufferedBytes;
+
+    UpsertRowWriter(Connection gaussConn, String tableName, List<ColumnInfo> columns, int[] keyIndexes)
+            throws SQLException {
+        this.columns = columns;
+        this.keyIndexes = keyIndexes;
+
+        StringBuilder updateSql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        StringBuilder insertSql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder values = new StringBuilder(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                updateSql.append(", ");
+                insertSql.append(", ");
+                values.append(", ");
+            }
+            updateSql.append(columns.get(i).name).append(" = ?");
+            insertSql.append(columns.get(i).name);
+            values.append("?");
+        }
+        updateSql.append(" WHERE ");
+        for (int i = 0; i < keyIndexes.length; i++) {
+            if (i > 0) updateSql.append(" AND ");
+            updateSql.append(columns.get(keyIndexes[i]).name).append(" = ?");
+        }
+
+        this.updateStmt = gaussConn.prepareStatement(updateSql.toString());
+        try {
+            this.insertStmt = gaussConn.prepareStatement(insertSql.append(values).append(")").toString());
+        } catch (SQLException e) {
+            updateStmt.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void addRow(Object[] values) {
+        Object[] row = values.clone();
+        pendingRows.put(keyOf(row), row);
+        bufferedBytes += ColumnInfo.sizeOf(row);
+    }
+
+    @Override
+    public void addRow(ResultSet rs) throws SQLException {
+        Object[] row = ColumnInfo.readRow(rs, columns, new Object[columns.size()]);
+        pendingRows.put(keyOf(row), row);
+        bufferedBytes += ColumnInfo.sizeOf(row);
+    }
+
+    @Override
+    public long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        bufferedBytes = 0;
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(pendingRows.values());
+        pendingRows.clear();
+
+        for (Object[] row : rows) {
+            bindColumns(updateStmt, row);
+            for (int i = 0; i < keyIndexes.length; i++) {
+                int column = keyIndexes[i];
+                columns.get(column).converter.setParameter(updateStmt, columns.size() + i + 1, row[column]);
+            }
+            updateStmt.addBatch();
+        }
+        int[] counts = updateStmt.executeBatch();
+
+        boolean inserting = false;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                bindColumns(insertStmt, rows.get(i));
+                insertStmt.addBatch();
+                inserting = true;
+            }
+        }
+        if (inserting) {
+            insertStmt.executeBatch();
+        }
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        flush();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        pendingRows.clear();
+        try {
+            updateStmt.close();
+        } finally {
+            insertStmt.close();
+        }
+    }
+
+    private void bindColumns(PreparedStatement stmt, Object[] row) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).converter.setParameter(stmt, i + 1, row[i]);
+        }
+    }
+
+    private List<Object> keyOf(Object[] row) {
+        return ColumnInfo.keyOf(row, keyIndexes);
+    }
+}
@@ -0,0 +1,103 @@
+package org.zp.service.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 增量同步的高水位，按表保存水位列已同步的最大值（文本形式），与该表的增量数据在同一事务内提交
+ *
+ * @Author zp
+ * @Date 2024/10/24 10:05
+ */
+
+class WatermarkStore {
+
+    private final String watermarkTable;
+    private final String schemaName;
+
+    WatermarkStore(String watermarkTable, String schemaName) {
+        this.watermarkTable = watermarkTable;
+        this.schemaName = schemaName;
+    }
+
+    void createTableIfAbsent(Connection gaussConn) throws SQLException {
+        try (Statement stmt = gaussConn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + watermarkTable + " (" +
+                    "schema_name VARCHAR(128) NOT NULL, " +
+                    "table_name VARCHAR(128) NOT NULL, " +
+                    "watermark_column VARCHAR(128) NOT NULL, " +
+                    "high_value VARCHAR(64) NOT NULL, " +
+                    "updated_at TIMESTAMP, " +
+                    "PRIMARY KEY (schema_name, table_name))");
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    /**
+     * 读取表的高水位，水位列已更换或没有记录时返回null
+     */
+    String load(Connection gaussConn, String tableName, String column) throws SQLException {
+        String sql = "SELECT watermark_column, high_value FROM " + watermarkTable +
+                " WHERE schema_name = ? AND table_name = ?";
+        String value = null;
+        try (PreparedStatement stmt = gaussConn.prepareStatement(sql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && column.equalsIgnoreCase(rs.getString(1))) {
+                    value = rs.getString(2);
+                }
+            }
+        }
+        commitIfNeeded(gaussConn);
+        return value;
+    }
+
+    /**
+     * 写入高水位，不提交，由调用方与数据一起提交
+     */
+    void save(Connection gaussConn, String tableName, String column, String value) throws SQLException {
+        String updateSql = "UPDATE " + watermarkTable + " SET watermark_column = ?, high_value = ?, " +
+                "updated_at = CURRENT_TIMESTAMP WHERE schema_name = ? AND table_name = ?";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(updateSql)) {
+            stmt.setString(1, column);
+            stmt.setString(2, value);
+            stmt.setString(3, schemaName);
+            stmt.setString(4, tableName);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        String insertSql = "INSERT INTO " + watermarkTable + " (schema_name, table_name, watermark_column, " +
+                "high_value, updated_at) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(insertSql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            stmt.setString(3, column);
+            stmt.setString(4, value);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 删除表的高水位并提交，下一次增量同步时该表全量按主键写入
+     */
+    void delete(Connection gaussConn, String tableName) throws SQLException {
+        String sql = "DELETE FROM " + watermarkTable + " WHERE schema_name = ? AND table_name = ?";
+        try (PreparedStatement stmt = gaussConn.prepareStatement(sql)) {
+            stmt.setString(1, schemaName);
+            stmt.setString(2, tableName);
+            stmt.executeUpdate();
+        }
+        commitIfNeeded(gaussConn);
+    }
+
+    private static void commitIfNeeded(Connection gaussConn) throws SQLException {
+        if (!gaussConn.getAutoCommit()) {
+            gaussConn.commit();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.zp.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 限制同时向高斯发送批次的线程数（AIMD）：出现拥塞时上限减半，之后每连续成功上限次加一，
+ * 表级工作线程、分片线程和流水线写入线程共用。超出上限的线程在发送前等待
+ *
+ * @Author zp
+ * @Date 2024/10/24 15:40
+ */
+
+class WriteConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteConcurrencyLimiter.class);
+
+    private final int maxLimit;
+    private final long decreaseIntervalNanos;
+    private int limit;
+    private int inFlight;
+    private int successes;
+    private long lastDecrease;
+
+    /**
+     * @param decreaseIntervalMs 两次减半的最小间隔，同一次延迟突增中并发返回的多个批次只减半一次
+     */
+    WriteConcurrencyLimiter(int maxLimit, long decreaseIntervalMs) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = this.maxLimit;
+        this.decreaseIntervalNanos = decreaseIntervalMs * 1_000_000L;
+        this.lastDecrease = System.nanoTime() - decreaseIntervalNanos;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    synchronized void release(boolean congested) {
+        inFlight--;
+        if (congested) {
+            successes = 0;
+            long now = System.nanoTime();
+            if (limit > 1 && now - lastDecrease >= decreaseIntervalNanos) {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = now;
+                logger.info("高斯写入延迟升高，并发写入上限降为 {}", limit);
+            }
+        } else if (limit < maxLimit && ++successes >= limit) {
+            limit++;
+            successes = 0;
+            logger.debug("并发写入上限升为 {}", limit);
+        }
+        notifyAll();
+    }
+
+    synchronized int limit() {
+        return limit;
+    }
+}
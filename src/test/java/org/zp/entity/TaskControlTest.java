@@ -0,0 +1,78 @@
+package org.zp.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskControlTest {
+
+	@Test
+	void cancelWakesPausedCheckpointAndCancelsStatements() throws Exception {
+		AtomicInteger cancelled = new AtomicInteger();
+		Statement stmt = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+				new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "cancel":
+							cancelled.incrementAndGet();
+							return null;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+					}
+				});
+		TaskControl control = new TaskControl("t");
+		TaskControl.Registration registration = control.register(stmt);
+		control.pause();
+		CompletableFuture<Void> worker = CompletableFuture.runAsync(() -> {
+			try {
+				control.checkpoint();
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(100);
+		assertFalse(worker.isDone());
+
+		control.cancel();
+		try {
+			worker.get(5, TimeUnit.SECONDS);
+			throw new AssertionError("checkpoint should fail after cancel");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getCause() instanceof TaskControl.CancelledException);
+		}
+		assertEquals(1, cancelled.get());
+		registration.close();
+	}
+
+	@Test
+	void resumeReleasesPausedCheckpoint() throws Exception {
+		TaskControl control = new TaskControl("t");
+		control.pause();
+		CompletableFuture<Void> worker = CompletableFuture.runAsync(() -> {
+			try {
+				control.checkpoint();
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(100);
+		assertFalse(worker.isDone());
+
+		control.resume();
+		worker.get(5, TimeUnit.SECONDS);
+		assertFalse(control.isCancelled());
+	}
+}
@@ -0,0 +1,47 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTunerTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void growsAdditivelyAndHalvesOnSlowFlush() {
+		BatchTuner tuner = new BatchTuner("t", true, 1000, 100, 1600, 500, 1000);
+		assertFalse(tuner.record(1000, 0, 100 * MS));
+		assertEquals(1500, tuner.batchSize());
+		assertFalse(tuner.record(1500, 0, 150 * MS));
+		assertEquals(1600, tuner.batchSize());
+
+		assertTrue(tuner.record(1600, 0, 1200 * MS));
+		assertEquals(800, tuner.batchSize());
+	}
+
+	@Test
+	void backsOffOnLatencySpike() {
+		BatchTuner tuner = new BatchTuner("t", true, 1000, 100, 20000, 500, 1000);
+		tuner.record(1000, 0, 10 * MS);
+		int size = tuner.batchSize();
+		assertTrue(tuner.record(size, 0, 200 * MS));
+		assertEquals(size / 2, tuner.batchSize());
+	}
+
+	@Test
+	void keepsSizeForPartialBatchesAndWhenDisabled() {
+		BatchTuner tuner = new BatchTuner("t", true, 1000, 100, 20000, 500, 1000);
+		tuner.record(300, 64L << 20, 100 * MS);
+		assertEquals(1000, tuner.batchSize());
+
+		BatchTuner fixed = new BatchTuner("t", false, 1000, 100, 20000, 500, 1000);
+		fixed.record(1000, 0, 10 * MS);
+		fixed.record(1000, 0, 5000 * MS);
+		assertEquals(1000, fixed.batchSize());
+	}
+}
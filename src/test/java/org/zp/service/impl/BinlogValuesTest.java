@@ -0,0 +1,55 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BinlogValuesTest {
+
+	@Test
+	void restoresUnsignedIntegers() throws Exception {
+		assertEquals(255, BinlogValues.normalize(-1, "TINYINT UNSIGNED", "tinyint(3) unsigned"));
+		assertEquals(4294967295L, BinlogValues.normalize(-1, "INT UNSIGNED", "int(10) unsigned"));
+		assertEquals(new BigDecimal("18446744073709551615"), BinlogValues.normalize(-1L, "BIGINT UNSIGNED", "bigint(20) unsigned"));
+		assertEquals(-1, BinlogValues.normalize(-1, "INT", "int(11)"));
+	}
+
+	@Test
+	void convertsMicrosecondDateTimes() throws Exception {
+		long micros = 1_700_000_000_123_456L;
+		assertEquals(Timestamp.valueOf("2023-11-14 22:13:20.123456"), BinlogValues.normalize(micros, "DATETIME", "datetime(6)"));
+		assertEquals(Date.valueOf("2023-11-14"), BinlogValues.normalize(19675L * 86_400_000_000L, "DATE", "date"));
+		Timestamp timestamp = (Timestamp) BinlogValues.normalize(micros, "TIMESTAMP", "timestamp(6)");
+		assertEquals(1_700_000_000_123L, timestamp.getTime());
+		assertEquals(123_456_000, timestamp.getNanos());
+	}
+
+	@Test
+	void decodesTextEnumSetAndBit() throws Exception {
+		assertEquals("中文", BinlogValues.normalize("中文".getBytes(StandardCharsets.UTF_8), "VARCHAR", "varchar(10)"));
+		assertArrayEquals(new byte[]{1, 2}, (byte[]) BinlogValues.normalize(new byte[]{1, 2}, "VARBINARY", "varbinary(2)"));
+		assertEquals("b'c", BinlogValues.normalize(2, "ENUM", "enum('a','b''c')"));
+		assertEquals("a,c", BinlogValues.normalize(5L, "SET", "set('a','b','c')"));
+		BitSet bit = new BitSet();
+		bit.set(0);
+		assertEquals(true, BinlogValues.normalize(bit, "BIT", "bit(1)"));
+		assertEquals(Arrays.asList("x", "y,z"), BinlogValues.parseMembers("enum('x','y,z')"));
+	}
+
+	@Test
+	void convertsTinyintOneToBoolean() throws Exception {
+		String mysqlType = SchemaMetadataLoader.typeName("TINYINT", "tinyint(1)");
+		assertEquals(true, BinlogValues.normalize(1, mysqlType, "tinyint(1)"));
+		assertEquals(false, BinlogValues.normalize(0, mysqlType, "tinyint(1)"));
+		assertEquals(true, BinlogValues.normalize(-1, mysqlType, "tinyint(1)"));
+	}
+
+}
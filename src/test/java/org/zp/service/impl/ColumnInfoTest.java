@@ -0,0 +1,21 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ColumnInfoTest {
+
+	@Test
+	void comparesBinaryKeysByContent() {
+		int[] keyIndexes = {0, 2};
+		Object[] first = {new byte[]{1, 2}, "a", 7};
+		Object[] second = {new byte[]{1, 2}, "b", 7};
+		Object[] other = {new byte[]{1, 3}, "a", 7};
+		assertEquals(ColumnInfo.keyOf(first, keyIndexes), ColumnInfo.keyOf(second, keyIndexes));
+		assertEquals(ColumnInfo.keyOf(first, keyIndexes).hashCode(), ColumnInfo.keyOf(second, keyIndexes).hashCode());
+		assertNotEquals(ColumnInfo.keyOf(first, keyIndexes), ColumnInfo.keyOf(other, keyIndexes));
+	}
+
+}
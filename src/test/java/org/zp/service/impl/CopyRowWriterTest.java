@@ -0,0 +1,27 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.zp.entity.CopyFormat;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CopyRowWriterTest {
+
+	@Test
+	void encodesTextFormat() {
+		StringBuilder out = new StringBuilder();
+		CopyRowWriter.appendRow(out, new Object[]{1, null, "a\tb\\c\nd", new byte[]{0x0F, (byte) 0xA0}, true,
+				new BigDecimal("1E+3")}, CopyFormat.TEXT);
+		assertEquals("1\t\\N\ta\\tb\\\\c\\nd\t\\\\x0fa0\tt\t1000\n", out.toString());
+	}
+
+	@Test
+	void encodesCsvFormat() {
+		StringBuilder out = new StringBuilder();
+		CopyRowWriter.appendRow(out, new Object[]{1, null, "say \"hi\", bye", "", new byte[]{0x01}}, CopyFormat.CSV);
+		assertEquals("\"1\",,\"say \"\"hi\"\", bye\",\"\",\"\\x01\"\n", out.toString());
+	}
+
+}
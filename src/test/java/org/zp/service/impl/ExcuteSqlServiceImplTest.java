@@ -0,0 +1,48 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExcuteSqlServiceImplTest {
+
+	@Test
+	void parsesIndexTable() {
+		assertEquals("orders", ExcuteSqlServiceImpl.indexTable("CREATE INDEX idx_a ON orders (a);"));
+		assertEquals("orders", ExcuteSqlServiceImpl.indexTable("create unique index uk_b on public.\"orders\"(b);"));
+		assertNull(ExcuteSqlServiceImpl.indexTable("ALTER TABLE orders ADD CONSTRAINT c CHECK (a > 0);"));
+	}
+
+	@Test
+	void ordersIndexesByTableSize() {
+		Map<String, Long> sizes = new HashMap<>();
+		sizes.put("big", 1000L);
+		sizes.put("small", 10L);
+		List<String> ordered = ExcuteSqlServiceImpl.orderBySize(Arrays.asList(
+				"CREATE INDEX s1 ON small (a);",
+				"CREATE INDEX u1 ON unknown (a);",
+				"CREATE INDEX b1 ON big (a);",
+				"CREATE INDEX b2 ON big (b);"), sizes);
+		// 同一张表的索引保持文件中的顺序
+		assertEquals(Arrays.asList(
+				"CREATE INDEX b1 ON big (a);",
+				"CREATE INDEX b2 ON big (b);",
+				"CREATE INDEX s1 ON small (a);",
+				"CREATE INDEX u1 ON unknown (a);"), ordered);
+	}
+
+	@Test
+	void keepsQueriesOutOfBatches() {
+		assertTrue(ExcuteSqlServiceImpl.isBatchable("CREATE INDEX a ON t (x)"));
+		assertTrue(ExcuteSqlServiceImpl.isBatchable("ALTER TABLE t ADD CONSTRAINT c CHECK (a > 0)"));
+		assertFalse(ExcuteSqlServiceImpl.isBatchable("select count(*) from t"));
+	}
+}
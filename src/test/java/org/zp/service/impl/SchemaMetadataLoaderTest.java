@@ -0,0 +1,30 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.DatabaseMetaData;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchemaMetadataLoaderTest {
+
+	@Test
+	void mapsColumnTypeLikeDriverTypeName() {
+		assertEquals("BIT", SchemaMetadataLoader.typeName("TINYINT", "tinyint(1)"));
+		assertEquals("TINYINT", SchemaMetadataLoader.typeName("TINYINT", "tinyint(4)"));
+		assertEquals("INT UNSIGNED", SchemaMetadataLoader.typeName("INT", "int(10) unsigned"));
+		assertEquals("VARCHAR", SchemaMetadataLoader.typeName("VARCHAR", "varchar(64)"));
+	}
+
+	@Test
+	void mapsReferentialRulesToMetaDataCodes() {
+		assertEquals(DatabaseMetaData.importedKeyCascade, SchemaMetadataLoader.ruleCode("CASCADE"));
+		assertEquals(DatabaseMetaData.importedKeySetNull, SchemaMetadataLoader.ruleCode("SET NULL"));
+		assertEquals(DatabaseMetaData.importedKeyNoAction, SchemaMetadataLoader.ruleCode("NO ACTION"));
+		assertEquals(DatabaseMetaData.importedKeyRestrict, SchemaMetadataLoader.ruleCode("RESTRICT"));
+		// pg_constraint的单字符代码
+		assertEquals(DatabaseMetaData.importedKeyCascade, SchemaMetadataLoader.gaussRuleCode("c"));
+		assertEquals(DatabaseMetaData.importedKeySetNull, SchemaMetadataLoader.gaussRuleCode("n"));
+		assertEquals(DatabaseMetaData.importedKeyNoAction, SchemaMetadataLoader.gaussRuleCode("a"));
+	}
+}
@@ -0,0 +1,52 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SqlStatementReaderTest {
+
+	private static List<String> split(String script) throws IOException {
+		List<String> statements = new ArrayList<>();
+		try (SqlStatementReader reader = new SqlStatementReader(new StringReader(script))) {
+			String sql;
+			while ((sql = reader.next()) != null) {
+				statements.add(sql);
+			}
+		}
+		return statements;
+	}
+
+	@Test
+	void splitsOnlyOutsideQuotesAndComments() throws IOException {
+		String script = "-- header; not a statement\n"
+				+ "CREATE TABLE t (\n    a INT COMMENT 'x;\n y'\n);\n"
+				+ "/* block; /* nested; */ still comment */\n"
+				+ "INSERT INTO \"odd;name\" VALUES ('it''s; fine');;\n"
+				+ "CREATE FUNCTION f() RETURNS int AS $body$ SELECT 1; $body$ LANGUAGE sql;\n"
+				+ "SELECT 2";
+		assertEquals(Arrays.asList(
+				"CREATE TABLE t (\n    a INT COMMENT 'x;\n y'\n)",
+				"INSERT INTO \"odd;name\" VALUES ('it''s; fine')",
+				"CREATE FUNCTION f() RETURNS int AS $body$ SELECT 1; $body$ LANGUAGE sql",
+				"SELECT 2"), split(script));
+	}
+
+	@Test
+	void reportsStatementStartLine() throws IOException {
+		try (SqlStatementReader reader = new SqlStatementReader(new StringReader("\n\nCREATE INDEX a ON t (x);\n-- c\nDROP VIEW v;"))) {
+			reader.next();
+			assertEquals(3, reader.getStatementLine());
+			assertEquals("DROP VIEW v", reader.next());
+			assertEquals(5, reader.getStatementLine());
+			assertNull(reader.next());
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TableSchedulerTest {
+
+	@Test
+	void startsLongestTablesFirst() {
+		Map<String, Double> estimates = new HashMap<>();
+		estimates.put("small", 1.0);
+		estimates.put("huge", 9.0);
+		estimates.put("medium", 4.0);
+		estimates.put("medium2", 4.0);
+		List<String> order = TableScheduler.order(estimates);
+		assertEquals("huge", order.get(0));
+		assertEquals("small", order.get(3));
+
+		// 两个线程：huge单独一个线程，其余三张表在另一个线程上共9秒
+		assertEquals(9.0, TableScheduler.makespan(Arrays.asList(9.0, 4.0, 4.0, 1.0), 2), 1e-9);
+		// 大表最后开始时总耗时被拉长
+		assertEquals(13.0, TableScheduler.makespan(Arrays.asList(1.0, 4.0, 4.0, 9.0), 2), 1e-9);
+	}
+
+	@Test
+	void estimatesFromSizeAndThroughputHistory() {
+		TableScheduler scheduler = new TableScheduler(1000);
+		TableScheduler.TableSize size = new TableScheduler.TableSize(100, 8000, 2000);
+		long bytes = size.estimateBytes(200);
+		assertEquals(200 * (100 + TableScheduler.ROW_OVERHEAD_BYTES), bytes);
+		assertEquals(bytes / 1000.0, scheduler.estimateSeconds("t", bytes, 1), 1e-9);
+		assertEquals(bytes / 2000.0, scheduler.estimateSeconds("t", bytes, 2), 1e-9);
+
+		scheduler.recordThroughput("T", 4000, 1, TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1.0, scheduler.estimateSeconds("t", 4000, 1), 1e-9);
+		// 没有记录的表使用已记录表的平均吞吐量
+		assertEquals(2.0, scheduler.estimateSeconds("other", 8000, 1), 1e-9);
+	}
+}
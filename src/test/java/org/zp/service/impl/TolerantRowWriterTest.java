@@ -0,0 +1,111 @@
+package org.zp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TolerantRowWriterTest {
+
+	@Test
+	void bisectsBatchAndWritesBadRowsToDeadLetterFile() throws Exception {
+		List<Object> committed = new ArrayList<>();
+		List<ColumnInfo> columns = Arrays.asList(
+				new ColumnInfo("id", "INT", "INTEGER", TypeConverters.forType("INT")),
+				new ColumnInfo("name", "VARCHAR", "VARCHAR", TypeConverters.forType("VARCHAR")));
+		File dir = Files.createTempDirectory("dead").toFile();
+		DeadLetterFile deadLetters = new DeadLetterFile(dir, "t");
+
+		TolerantRowWriter writer = new TolerantRowWriter(savepointConnection(), "t", columns,
+				() -> new FailingWriter(committed), deadLetters);
+		for (int i = 1; i <= 10; i++) {
+			writer.addRow(new Object[]{i, i == 3 || i == 8 ? "bad" : "ok"});
+		}
+		writer.finish();
+		deadLetters.close();
+
+		assertEquals(Arrays.asList(1, 2, 4, 5, 6, 7, 9, 10), committed);
+		assertEquals(2, deadLetters.getRows());
+		List<String> lines = Files.readAllLines(deadLetters.getFile().toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals("22P02\tbad value\tid=3\tname=bad", lines.get(1));
+		assertTrue(lines.get(2).endsWith("id=8\tname=bad"));
+	}
+
+	private static Connection savepointConnection() {
+		Savepoint savepoint = (Savepoint) Proxy.newProxyInstance(Savepoint.class.getClassLoader(),
+				new Class<?>[]{Savepoint.class}, (proxy, method, args) -> null);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+				(proxy, method, args) -> {
+					if (method.getName().equals("setSavepoint")) {
+						return savepoint;
+					}
+					if (method.getName().equals("isClosed")) {
+						return false;
+					}
+					return null;
+				});
+	}
+
+	/**
+	 * 批次中含有"bad"时整批失败，否则记录写入的id
+	 */
+	private static class FailingWriter implements RowWriter {
+
+		private final List<Object> committed;
+		private final List<Object[]> rows = new ArrayList<>();
+
+		FailingWriter(List<Object> committed) {
+			this.committed = committed;
+		}
+
+		@Override
+		public void addRow(Object[] values) {
+			rows.add(values);
+		}
+
+		@Override
+		public void addRow(ResultSet rs) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long bufferedBytes() {
+			return 0;
+		}
+
+		@Override
+		public void flush() throws SQLException {
+			for (Object[] row : rows) {
+				if ("bad".equals(row[1])) {
+					throw new SQLException("bad value", "22P02");
+				}
+			}
+			for (Object[] row : rows) {
+				committed.add(row[0]);
+			}
+			rows.clear();
+		}
+
+		@Override
+		public void finish() throws SQLException {
+			flush();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}